@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ByteRecord implements CharSequence {
+	
+	private static final int COPY_CHUNK = 8192; // Bytes copied at a time when the buffer has no backing array
+	
+	private ByteBuffer buffer; // Buffer holding the bytes, shared with the reader that filled it
+	private int offset; // Position of the first byte in the buffer
+	private int length; // Number of bytes
+	private String text; // Decoded text, null until a Java string is needed
+	private int characters = -1; // Number of UTF-8 characters, -1 until counted
+	
+	public ByteRecord() {
+		this.buffer = ByteBuffer.allocate(0);
+	}
+	
+	public ByteRecord(ByteBuffer buffer, int offset, int length) {
+		set(buffer, offset, length);
+	}
+	
+	// Points this view at a new range of bytes
+	public void set(ByteBuffer buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+		this.text = null;
+		this.characters = -1;
+	}
+	
+	// Points this view at part of another view
+	public void set(ByteRecord record, int start, int end) {
+		set(record.buffer, record.offset + start, end - start);
+		if (record.characters == record.length) {
+			characters = length; // Part of an ASCII record is ASCII too
+		}
+	}
+	
+	// Checks if every byte is 7-bit ASCII, so each byte is exactly one character
+	public boolean isAscii() {
+		if (characters >= 0) {
+			return characters == length;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(offset + i) < 0) {
+				return false;
+			}
+		}
+		characters = length;
+		return true;
+	}
+	
+	// Counts the UTF-8 characters without decoding them, by skipping continuation bytes
+	public int characterCount() {
+		if (characters < 0) {
+			int count = 0;
+			for (int i = 0; i < length; i++) {
+				if ((buffer.get(offset + i) & 0xc0) != 0x80) {
+					count++;
+				}
+			}
+			characters = count;
+		}
+		return characters;
+	}
+	
+	// Writes the bytes without decoding them
+	public void writeTo(OutputStream out) throws IOException {
+		if (out instanceof OutputSink) {
+			((OutputSink) out).write(buffer, offset, length);
+			return;
+		}
+		if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + offset, length);
+			return;
+		}
+		byte[] chunk = new byte[Math.min(length, COPY_CHUNK)];
+		for (int done = 0; done < length; done += chunk.length) {
+			int count = Math.min(chunk.length, length - done);
+			buffer.get(offset + done, chunk, 0, count);
+			out.write(chunk, 0, count);
+		}
+	}
+	
+	// Byte length; equal to the character length for ASCII records
+	@Override
+	public int length() {
+		return length;
+	}
+	
+	// Character at a position; only meaningful for ASCII records
+	@Override
+	public char charAt(int index) {
+		return (char) (buffer.get(offset + index) & 0xff);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new ByteRecord(buffer, offset + start, end - start);
+	}
+	
+	// Decodes the bytes as UTF-8, once
+	@Override
+	public String toString() {
+		if (text == null) {
+			if (buffer.hasArray()) {
+				text = new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+			}
+			else {
+				text = StandardCharsets.UTF_8.decode(buffer.slice(offset, length)).toString();
+			}
+		}
+		return text;
+	}
+	
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ByteStreamRecordReader implements RecordReader {
+	
+	private static final int BUFFER_SIZE = 1 << 16; // Initial size of the reusable byte buffer
+	
+	private InputStream input; // Source of bytes
+	private RecordSplitter splitter; // Finds the separator at the end of each record
+	private byte[] buffer = new byte[BUFFER_SIZE]; // Reusable buffer, grown when a record does not fit
+	private ByteBuffer wrapped = ByteBuffer.wrap(buffer); // Buffer view handed to ByteRecords
+	private int position; // Offset where the next record starts
+	private int limit; // Number of valid bytes in the buffer
+	private boolean endOfInput; // True once the stream has no more bytes
+	private ByteRecord record = new ByteRecord(); // View of the current record, reused for every record
+	private int terminatorStart; // Start of the separator that ended the current record
+	private int terminatorEnd; // End of the separator that ended the current record
+	private int spillSize = 0; // Records growing past this many bytes are moved to a temporary file, 0 for never
+	
+	public ByteStreamRecordReader(InputStream input) {
+		this(input, new RecordSplitter(RecordSplitter.DEFAULT_SEPARATOR));
+	}
+	
+	public ByteStreamRecordReader(InputStream input, RecordSplitter splitter) {
+		this.input = input;
+		this.splitter = splitter;
+	}
+	
+	// Sets the record size past which a record is spilled instead of growing the buffer. Only
+	// separators of a fixed length can be spilled; paragraph and regex records always stay in memory.
+	public void setSpillSize(int spillSize) {
+		this.spillSize = spillSize;
+	}
+	
+	@Override
+	public boolean nextRecord() throws IOException {
+		if (splitter.skipsLeadingNewlines()) {
+			skipNewlines();
+		}
+		boolean found = splitter.find(wrapped, position, position, limit, endOfInput);
+		while (!found && !endOfInput) {
+			if (spillSize > 0 && limit - position >= spillSize && !splitter.skipsLeadingNewlines()
+					&& splitter.getType() != RecordSplitter.SplitType.REGEX) {
+				spillRecord();
+				return true;
+			}
+			int scanned = limit - position;
+			fill();
+			found = splitter.find(wrapped, position, position + scanned, limit, endOfInput);
+		}
+		if (position >= limit) {
+			return false; // No more records
+		}
+		
+		int recordStart = position;
+		int recordEnd;
+		if (!found) {
+			// Last record without a trailing separator
+			recordEnd = limit;
+			position = limit;
+			terminatorStart = limit;
+		}
+		else {
+			recordEnd = splitter.getSeparatorStart();
+			position = splitter.getSeparatorEnd();
+			terminatorStart = recordEnd;
+		}
+		terminatorEnd = position;
+		
+		recordEnd = splitter.trimEnd(wrapped, recordStart, recordEnd);
+		record.set(wrapped, recordStart, recordEnd - recordStart);
+		return true;
+	}
+	
+	// Copies the rest of an oversized record into a temporary file and maps it, so the record never
+	// has to fit in the heap. The file is deleted right away; the mapping keeps its pages until it
+	// is no longer used.
+	private void spillRecord() throws IOException {
+		Path file = Files.createTempFile("awk-record", ".tmp");
+		try (FileChannel spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE)) {
+			long size = 0;
+			boolean found = false;
+			int keep = splitter.getType() == RecordSplitter.SplitType.LITERAL ? splitter.getSeparator().length() - 1 : 0;
+			while (!found && !endOfInput) {
+				// Write all but the last few bytes, which could be the start of a separator
+				int count = Math.max(0, limit - position - keep);
+				size = checkSpillSize(size, count);
+				spill.write(ByteBuffer.wrap(buffer, position, count));
+				position += count;
+				fill();
+				found = splitter.find(wrapped, position, position, limit, endOfInput);
+			}
+			int recordEnd = found ? splitter.getSeparatorStart() : limit;
+			size = checkSpillSize(size, recordEnd - position);
+			spill.write(ByteBuffer.wrap(buffer, position, recordEnd - position));
+			terminatorStart = recordEnd;
+			position = found ? splitter.getSeparatorEnd() : limit;
+			terminatorEnd = position;
+			
+			ByteBuffer mapped = spill.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			int length = splitter.trimEnd(mapped, 0, (int) size);
+			record.set(mapped, 0, length);
+		}
+	}
+	
+	// Returns the size of the spilled record after count more bytes, failing before they are written
+	// if the record would no longer fit in one mapping
+	private static long checkSpillSize(long size, int count) throws IOException {
+		if (size + count > Integer.MAX_VALUE) {
+			throw new IOException("Record is longer than " + Integer.MAX_VALUE + " bytes, the most a spilled record can hold");
+		}
+		return size + count;
+	}
+	
+	// Skips newlines ahead of the next record, reading more input while the buffer holds nothing else
+	private void skipNewlines() throws IOException {
+		while (true) {
+			while (position < limit && buffer[position] == '\n') {
+				position++;
+			}
+			if (position < limit || endOfInput) {
+				return;
+			}
+			fill();
+		}
+	}
+	
+	// Moves the unread bytes to the front of the buffer, growing it if it is full, and reads more
+	private void fill() throws IOException {
+		int remaining = limit - position;
+		if (position == 0 && limit == buffer.length) {
+			byte[] larger = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, larger, 0, limit);
+			buffer = larger;
+			wrapped = ByteBuffer.wrap(buffer);
+		}
+		else {
+			System.arraycopy(buffer, position, buffer, 0, remaining);
+		}
+		position = 0;
+		limit = remaining;
+		int count = input.read(buffer, limit, buffer.length - limit);
+		if (count < 0) {
+			endOfInput = true;
+		}
+		else {
+			limit += count;
+		}
+	}
+	
+	@Override
+	public String getRecord() {
+		return record.toString();
+	}
+	
+	@Override
+	public ByteRecord getBytes() {
+		return record;
+	}
+	
+	@Override
+	public String getTerminator() {
+		return new String(buffer, terminatorStart, terminatorEnd - terminatorStart, StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		input.close();
+	}
+	
+}
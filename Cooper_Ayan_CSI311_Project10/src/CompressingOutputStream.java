@@ -0,0 +1,226 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+	
+public class CompressingOutputStream extends OutputStream {
+	
+	private static final int BLOCK_SIZE = 1 << 17; // Uncompressed bytes per gzip member
+	private static final int THREADS = Runtime.getRuntime().availableProcessors(); // Deflaters shared by every stream
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff}; // gzip member header
+	
+	// Compresses blocks for every open stream; daemon threads so they never keep the program alive
+	private static final ExecutorService deflaters = Executors.newFixedThreadPool(THREADS, (task) -> {
+		Thread thread = new Thread(task, "gzip-output");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	// What each pool thread keeps between blocks, so compressing a block allocates only its result
+	private static class Worker {
+		private Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true); // Raw deflate; the member framing is written here
+		private CRC32 crc = new CRC32();
+		private ByteArrayOutputStream member = new ByteArrayOutputStream(BLOCK_SIZE);
+		private byte[] chunk = new byte[1 << 16];
+	}
+	
+	private static final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+	
+	// A block being compressed, or the end marker when future is null
+	private static class Pending {
+		private CompletableFuture<byte[]> future;
+	}
+	
+	private OutputStream out; // Stream the gzip members are written to
+	private int level; // Deflate level, 1 to 9
+	private byte[] block = new byte[BLOCK_SIZE]; // Bytes not yet handed to a deflater
+	private int count; // Number of bytes in the block
+	private ArrayBlockingQueue<byte[]> free = new ArrayBlockingQueue<byte[]>(2 * THREADS + 2); // Blocks ready for reuse
+	private ArrayBlockingQueue<Pending> pending = new ArrayBlockingQueue<Pending>(2 * THREADS); // Members in output order
+	private Thread writer; // Writes finished members in order
+	private volatile IOException failure; // Error from compressing or writing, reported to the next caller
+	private long submitted; // Blocks handed to the deflaters
+	private long written; // Blocks the writer has finished, guarded by this
+	private boolean closed = false;
+	
+	public CompressingOutputStream(OutputStream out) {
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	// Writes gzip output compressed in independent blocks on a pool of threads, like pigz. Each
+	// block is a complete gzip member; gzip -d and GZIPInputStream read the members as one stream.
+	public CompressingOutputStream(OutputStream out, int level) {
+		this.out = out;
+		this.level = level;
+		writer = new Thread(this::writeMembers, "gzip-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		if (count == block.length) {
+			submit();
+		}
+		block[count++] = (byte) b;
+	}
+	
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (count == block.length) {
+				submit();
+			}
+			int chunk = Math.min(length, block.length - count);
+			System.arraycopy(bytes, offset, block, count, chunk);
+			count += chunk;
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+	
+	// Hands the current block to a deflater and starts a new one. Only waits when every deflater
+	// and the queue in front of the writer are already busy.
+	private void submit() throws IOException {
+		checkFailure();
+		if (count == 0 && (submitted > 0 || !closed)) {
+			return; // Empty output still needs one member to be a valid gzip file
+		}
+		byte[] data = block;
+		int length = count;
+		Pending next = new Pending();
+		next.future = CompletableFuture.supplyAsync(() -> compress(data, length), deflaters);
+		enqueue(next);
+		submitted++;
+		block = free.poll();
+		if (block == null) {
+			block = new byte[BLOCK_SIZE];
+		}
+		count = 0;
+	}
+	
+	private void enqueue(Pending next) throws IOException {
+		try {
+			pending.put(next);
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while queueing compressed output");
+		}
+	}
+	
+	// Compresses one block into a gzip member, then recycles the block
+	private byte[] compress(byte[] data, int length) {
+		Worker worker = workers.get();
+		Deflater compressor = worker.deflater;
+		compressor.reset();
+		compressor.setLevel(level);
+		worker.crc.reset();
+		worker.crc.update(data, 0, length);
+		compressor.setInput(data, 0, length);
+		compressor.finish();
+	
+		ByteArrayOutputStream buffer = worker.member;
+		buffer.reset();
+		buffer.write(HEADER, 0, HEADER.length);
+		while (!compressor.finished()) {
+			int produced = compressor.deflate(worker.chunk);
+			buffer.write(worker.chunk, 0, produced);
+		}
+		writeInt(buffer, (int) worker.crc.getValue());
+		writeInt(buffer, length);
+		free.offer(data);
+		return buffer.toByteArray();
+	}
+	
+	// Appends a little-endian 32-bit value, as the gzip trailer stores them
+	private static void writeInt(ByteArrayOutputStream buffer, int value) {
+		buffer.write(value);
+		buffer.write(value >>> 8);
+		buffer.write(value >>> 16);
+		buffer.write(value >>> 24);
+	}
+	
+	// Writer loop: writes each member as soon as it and every member before it are done
+	private void writeMembers() {
+		try {
+			while (true) {
+				Pending next = pending.take();
+				if (next.future == null) {
+					break;
+				}
+				if (failure == null) {
+					try {
+						out.write(next.future.get());
+					}
+					catch (IOException e) {
+						failure = e;
+					}
+					catch (ExecutionException e) {
+						failure = new IOException("Compressing output failed", e.getCause());
+					}
+				}
+				synchronized (this) {
+					written++;
+					notifyAll();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			return;
+		}
+	}
+	
+	// Waits until the writer has written every block submitted so far
+	private void drain() throws IOException {
+		synchronized (this) {
+			while (written < submitted) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted while writing compressed output");
+				}
+			}
+		}
+		checkFailure();
+	}
+	
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	// Writes out the members already compressed. The current block stays open until it is full or
+	// the stream is closed, so flushing after every record does not make a tiny member per record.
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush(); // The writer is idle until the next block is submitted
+	}
+	
+	// Writes the last block, stops the writer and closes the underlying stream
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			submit();
+			drain();
+			enqueue(new Pending()); // End marker
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+}
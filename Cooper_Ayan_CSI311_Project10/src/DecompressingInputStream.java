@@ -0,0 +1,168 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+public class DecompressingInputStream extends InputStream {
+	
+	private static final int BLOCK_SIZE = 1 << 16; // Bytes of decompressed data per block
+	private static final int QUEUE_BLOCKS = 16; // Blocks the producer may run ahead of the reader
+	
+	// A buffer of decompressed bytes; a block with a length of -1 marks the end of the input
+	private static class Block {
+		private final byte[] data = new byte[BLOCK_SIZE];
+		private int length;
+	}
+	
+	private ArrayBlockingQueue<Block> filled = new ArrayBlockingQueue<Block>(QUEUE_BLOCKS + 1); // Blocks ready to read
+	private ArrayBlockingQueue<Block> empty = new ArrayBlockingQueue<Block>(QUEUE_BLOCKS + 1); // Blocks ready to refill
+	private Thread producer; // Thread running the decompressor
+	private volatile IOException failure; // Error the producer hit, reported when the reader gets to it
+	private Block current; // Block being read, null before the first read
+	private int position; // Next byte to read in the current block
+	private boolean finished = false; // True once the end of the input was reached
+	
+	// Starts inflating on a separate thread, so decompression overlaps with running the program
+	public DecompressingInputStream(InputStream compressed) {
+		for (int i = 0; i < QUEUE_BLOCKS; i++) {
+			empty.add(new Block());
+		}
+		producer = new Thread(() -> decompress(compressed), "gzip-input");
+		producer.setDaemon(true);
+		producer.start();
+	}
+	
+	// Returns the input, decompressed on a separate thread if it starts with a gzip header
+	public static InputStream open(InputStream input) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(input, BLOCK_SIZE);
+		// Only wait for more than one byte when it could be a header, so a slow pipe is not held up
+		buffered.mark(4);
+		byte[] magic = new byte[4];
+		int length = 0;
+		int first = buffered.read();
+		if (first >= 0) {
+			magic[length++] = (byte) first;
+			if (first == 0x1f || first == 0x28) {
+				length += buffered.readNBytes(magic, 1, 3);
+			}
+		}
+		buffered.reset();
+		magic = Arrays.copyOf(magic, length);
+		checkFormat(magic);
+		return isGzip(magic) ? new DecompressingInputStream(buffered) : buffered;
+	}
+	
+	// Checks the first bytes of a regular file for a gzip header. Anything else, such as a pipe, is
+	// never opened here, since the bytes read would be lost to the real reader; use open instead
+	public static boolean isCompressed(Path path) throws IOException {
+		if (!Files.isRegularFile(path)) {
+			return false;
+		}
+		byte[] magic;
+		try (InputStream input = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ))) {
+			magic = input.readNBytes(4);
+		}
+		checkFormat(magic);
+		return isGzip(magic);
+	}
+	
+	private static boolean isGzip(byte[] magic) {
+		return magic.length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b;
+	}
+	
+	// Rejects compressed formats the JDK has no decoder for, rather than reading them as text
+	private static void checkFormat(byte[] magic) throws IOException {
+		if (magic.length >= 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+				&& (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+			throw new IOException("zstd-compressed input is not supported; decompress it first (zstd -dc)");
+		}
+	}
+	
+	// Producer loop: fills empty blocks with decompressed bytes until the input runs out
+	private void decompress(InputStream compressed) {
+		try (InputStream input = new GZIPInputStream(compressed, BLOCK_SIZE)) {
+			while (true) {
+				Block block = empty.take();
+				block.length = input.readNBytes(block.data, 0, BLOCK_SIZE);
+				if (block.length == 0) {
+					break;
+				}
+				filled.put(block);
+			}
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+		catch (InterruptedException e) {
+			return; // The reader closed the stream
+		}
+		Block end = new Block();
+		end.length = -1;
+		filled.add(end); // The queue always has room for the end marker
+	}
+	
+	@Override
+	public int read() throws IOException {
+		if (!nextBlock()) {
+			return -1;
+		}
+		return current.data[position++] & 0xff;
+	}
+	
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!nextBlock()) {
+			return -1;
+		}
+		int count = Math.min(length, current.length - position);
+		System.arraycopy(current.data, position, buffer, offset, count);
+		position += count;
+		return count;
+	}
+	
+	// Makes sure the current block has bytes left, waiting for the producer if needed
+	private boolean nextBlock() throws IOException {
+		while (current == null || position == current.length) {
+			if (finished) {
+				return false;
+			}
+			if (current != null) {
+				empty.add(current); // Hand the used block back to the producer
+			}
+			try {
+				current = filled.take();
+			}
+			catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while waiting for decompressed input");
+			}
+			position = 0;
+			if (current.length < 0) {
+				finished = true;
+				current = null;
+				if (failure != null) {
+					throw failure;
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	// Stops the producer, which closes the compressed input
+	@Override
+	public void close() {
+		finished = true;
+		producer.interrupt();
+	}
+}
@@ -0,0 +1,180 @@
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class FieldSplitter {
+	
+	// Ways a field separator can be matched, from cheapest to most expensive
+	public enum SplitType {
+		BLANK, CHARACTER, LITERAL, REGEX
+	}
+	
+	private static final String REGEX_CHARACTERS = ".[]()*+?^$|{}\\"; // Characters that make a separator a regex
+	
+	private String separator; // Separator this splitter was built for
+	private SplitType type; // How the separator is matched
+	private char character; // Separator for CHARACTER splitting
+	private Matcher matcher; // Compiled separator for REGEX splitting, reused for every string
+	
+	private CharSequence text; // Text being split, either a String or an ASCII ByteRecord
+	private int position; // Offset where the scan for the next field starts
+	private boolean done; // True once every field has been returned
+	private int fieldStart; // Start of the current field
+	private int fieldEnd; // End of the current field
+	
+	public FieldSplitter(String separator) {
+		this.separator = separator;
+		if (separator.equals(" ")) {
+			type = SplitType.BLANK; // Default FS: runs of blanks, leading and trailing blanks ignored
+		}
+		else if (separator.length() == 1) {
+			type = SplitType.CHARACTER; // A single character is always used literally
+			character = separator.charAt(0);
+		}
+		else if (!isRegex(separator)) {
+			type = SplitType.LITERAL;
+		}
+		else {
+			type = SplitType.REGEX;
+			matcher = Pattern.compile(separator).matcher("");
+		}
+	}
+	
+	// Checks if the separator has any regex metacharacters
+	static boolean isRegex(String separator) {
+		for (int i = 0; i < separator.length(); i++) {
+			if (REGEX_CHARACTERS.indexOf(separator.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public String getSeparator() {
+		return separator;
+	}
+	
+	public SplitType getType() {
+		return type;
+	}
+	
+	// Starts splitting a new string
+	public void reset(CharSequence text) {
+		this.text = text;
+		position = 0;
+		done = text.length() == 0; // An empty string has no fields
+		if (matcher != null) {
+			matcher.reset(text);
+		}
+	}
+	
+	// Moves to the next field, returning false once the string has no more fields
+	public boolean next() {
+		if (done) {
+			return false;
+		}
+		int separatorStart;
+		int separatorEnd;
+		switch (type) {
+		case BLANK:
+			int start = position;
+			while (start < text.length() && isBlank(text.charAt(start))) {
+				start++;
+			}
+			if (start == text.length()) {
+				done = true;
+				return false;
+			}
+			int end = start;
+			while (end < text.length() && !isBlank(text.charAt(end))) {
+				end++;
+			}
+			fieldStart = start;
+			fieldEnd = end;
+			position = end;
+			return true;
+			
+		case CHARACTER:
+			separatorStart = indexOf(character, position);
+			separatorEnd = separatorStart + 1;
+			break;
+			
+		case LITERAL:
+			separatorStart = indexOf(separator, position);
+			separatorEnd = separatorStart + separator.length();
+			break;
+			
+		default:
+			if (matcher.find()) {
+				separatorStart = matcher.start();
+				separatorEnd = matcher.end();
+			}
+			else {
+				separatorStart = -1;
+				separatorEnd = -1;
+			}
+			break;
+		}
+		
+		fieldStart = position;
+		if (separatorStart < 0) {
+			// Last field runs to the end of the string
+			fieldEnd = text.length();
+			done = true;
+		}
+		else {
+			fieldEnd = separatorStart;
+			position = separatorEnd;
+		}
+		return true;
+	}
+	
+	// Finds a character in the text, using String.indexOf when the text is a String
+	private int indexOf(char c, int from) {
+		if (text instanceof String) {
+			return ((String) text).indexOf(c, from);
+		}
+		for (int i = from; i < text.length(); i++) {
+			if (text.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	// Finds a literal string in the text, using String.indexOf when the text is a String
+	private int indexOf(String literal, int from) {
+		if (text instanceof String) {
+			return ((String) text).indexOf(literal, from);
+		}
+		for (int i = from; i <= text.length() - literal.length(); i++) {
+			int j = 0;
+			while (j < literal.length() && text.charAt(i + j) == literal.charAt(j)) {
+				j++;
+			}
+			if (j == literal.length()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private boolean isBlank(char c) {
+		return c == ' ' || c == '\t' || c == '\n';
+	}
+	
+	// Start of the current field in the string
+	public int getStart() {
+		return fieldStart;
+	}
+	
+	// End of the current field in the string
+	public int getEnd() {
+		return fieldEnd;
+	}
+	
+	// Text of the current field
+	public String getField() {
+		return text.subSequence(fieldStart, fieldEnd).toString();
+	}
+	
+}
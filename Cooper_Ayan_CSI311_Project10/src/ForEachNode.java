@@ -11,6 +11,10 @@ public class ForEachNode extends StatementNode{
 		this.forEachBlock = forEachBlock;
 	}
 	
+	public Node getInitialize() {
+		return initialize;
+	}
+	
 	public Node getIterable() {
 		return iterable;
 	}
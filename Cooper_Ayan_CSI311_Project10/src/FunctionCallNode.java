@@ -4,6 +4,8 @@ public class FunctionCallNode extends StatementNode{
 	
 	private String functionName;
 	private LinkedList<Node> parameters;
+	private RedirectionCache.Kind redirection; // How print or printf output is redirected, null for none
+	private Node redirectTarget; // File name or command the output goes to
 	
 	public FunctionCallNode(String functionName, LinkedList<Node> parameters) {
 		this.functionName = functionName;
@@ -30,6 +32,20 @@ public class FunctionCallNode extends StatementNode{
 		parameters = params;
 	}
 	
+	// Sends the output of print or printf to a file or command
+	public void setRedirection(RedirectionCache.Kind redirection, Node redirectTarget) {
+		this.redirection = redirection;
+		this.redirectTarget = redirectTarget;
+	}
+	
+	public RedirectionCache.Kind getRedirection() {
+		return redirection;
+	}
+	
+	public Node getRedirectTarget() {
+		return redirectTarget;
+	}
+	
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -45,6 +61,10 @@ public class FunctionCallNode extends StatementNode{
 			}
 			sb.append(")");
 			sb.append(" ");
+			if (redirection != null) {
+				sb.append(redirection == RedirectionCache.Kind.WRITE ? "> " : redirection == RedirectionCache.Kind.APPEND ? ">> " : "| ");
+				sb.append(redirectTarget.toString());
+			}
 			return sb.toString();
 		}
 		else {
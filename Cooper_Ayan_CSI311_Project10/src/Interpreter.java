@@ -1,11 +1,32 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -14,23 +35,113 @@ public class Interpreter {
 	
 	public class LineHandler {
 		
-		private List<String> lines;
+		private Path filePath; // Input file, opened the first time a record is requested
+		private String inputName; // Name FILENAME takes once the current input has a record, null for in-memory lines
+		private String text; // In-memory input supplied through setLines
+		private boolean standardInput = false; // Read the current input from System.in
+		private ArrayDeque<String> pendingInputs = new ArrayDeque<String>(); // Inputs still to be read after the current one
+		private boolean memoryMapped = false; // Read the file through a memory mapping instead of a stream
+		private boolean byteRecords = false; // Keep ASCII records and fields as bytes until a string is needed
+		private int largeRecordSize = 0; // Records longer than this many bytes are spilled to disk and never decoded, 0 for no limit
+		private long rangeStart = 0; // First byte of the file to read
+		private long rangeEnd = -1; // Byte just past the last one to read, or -1 for the whole file
+		private RecordReader reader; // Source of records, null until first use
+		private RecordSplitter recordSplitter; // Splits the input on RS, rebuilt when RS changes between inputs
+		private CharSequence line; // Current record, a ByteRecord when it is kept as bytes
+		private FieldSplitter splitter; // Splits records on FS, kept until FS changes
+		private boolean scanning; // True once the splitter has started on the current record
+		private String byteSafeSeparator; // Last FS checked by isByteSafeSeparator
+		private boolean byteSafe; // Whether that FS can split undecoded bytes
+		private InterpreterDataType[] fields = new InterpreterDataType[16]; // Field slots reused across records, $0 in slot 0
+		private int fieldCount; // Number of fields split so far (NF once the record is fully split)
+		private boolean fullySplit; // True once every field of the record has been split
 		int NR = 0; // Record number
 		int FNR = 0; // File record number
 		
 		
-		public LineHandler(List<String> lines) {
-			this.lines = lines;
+		public LineHandler(Path filePath) {
+			this.filePath = filePath;
+			this.inputName = filePath == null ? null : filePath.getFileName().toString();
 		}
 		
-		public List<String> getLines() {
-			return lines;
+		// Replaces the input with an in-memory list of lines
+		public void setLines(List<String> lines) {
+			close();
+			this.filePath = null;
+			this.standardInput = false;
+			this.pendingInputs.clear();
+			this.inputName = null;
+			this.text = String.join("\n", lines);
+			NR = 0; // Reset NR
+			FNR = 0; // Reset FNR
 		}
 		
-		public void setLines(List<String> lines) {
-			this.lines = lines;
+		// Replaces the input with a list of files read one after another, where "-" is standard input
+		public void setInputs(List<String> names) {
+			close();
+			this.text = null;
+			this.pendingInputs = new ArrayDeque<String>(names);
 			NR = 0; // Reset NR
+			nextInput();
+		}
+		
+		// Moves on to the next input, if any, starting its FNR over
+		private boolean nextInput() {
+			if (pendingInputs.isEmpty()) {
+				return false;
+			}
+			close();
+			String name = pendingInputs.poll();
+			standardInput = name.equals("-");
+			filePath = standardInput ? null : Path.of(name);
 			FNR = 0; // Reset FNR
+			inputName = name;
+			return true;
+		}
+		
+		// Checks if the input is a single uncompressed file of lines, which parallel workers can split into byte ranges
+		public boolean isPartitionable() throws IOException {
+			return filePath != null && pendingInputs.isEmpty() && Files.isRegularFile(filePath) && !DecompressingInputStream.isCompressed(filePath)
+					&& globalVariables.get("RS").getValue().equals(RecordSplitter.DEFAULT_SEPARATOR);
+		}
+		
+		// Returns the text that ended the current record
+		public String getRT() {
+			return reader == null ? "" : reader.getTerminator();
+		}
+		
+		// Chooses between streaming and memory mapping the input file
+		public void setMemoryMapped(boolean memoryMapped) {
+			this.memoryMapped = memoryMapped;
+		}
+		
+		public boolean isMemoryMapped() {
+			return memoryMapped;
+		}
+		
+		// Chooses whether records are processed as bytes instead of being decoded up front
+		public void setByteRecords(boolean byteRecords) {
+			this.byteRecords = byteRecords;
+		}
+		
+		public boolean isByteRecords() {
+			return byteRecords;
+		}
+		
+		// Sets the size past which a record is moved out of the heap into a temporary file, so $n,
+		// length and print work on it without a String copy; 0 keeps every record in memory
+		public void setLargeRecordSize(int largeRecordSize) {
+			this.largeRecordSize = largeRecordSize;
+		}
+		
+		public int getLargeRecordSize() {
+			return largeRecordSize;
+		}
+		
+		// Limits the input to the records in [start, end) of the file; used by parallel workers
+		public void setRange(long start, long end) {
+			this.rangeStart = start;
+			this.rangeEnd = end;
 		}
 		
 		public int getNR() {
@@ -49,57 +160,261 @@ public class Interpreter {
 			this.FNR = FNR;
 		}
 		
+		// Opens the input lazily so programs with only BEGIN blocks never touch the file. RS is read
+		// here, so a new value takes effect with the next input
+		private RecordReader getReader() throws IOException {
+			if (reader == null) {
+				String rs = globalVariables.get("RS").getValue();
+				if (recordSplitter == null || !recordSplitter.getSeparator().equals(rs)) {
+					recordSplitter = new RecordSplitter(rs);
+				}
+				// Large records need a byte reader, so only plain lines can use the text reader
+				boolean lines = recordSplitter.getType() == RecordSplitter.SplitType.NEWLINE && largeRecordSize == 0;
+				
+				if (standardInput) {
+					reader = streamReader(DecompressingInputStream.open(System.in));
+				}
+				else if (filePath == null && !lines) {
+					reader = byteStreamReader(new ByteArrayInputStream((text == null ? "" : text).getBytes(StandardCharsets.UTF_8)));
+				}
+				else if (filePath == null) {
+					reader = new StreamRecordReader(new StringReader(text == null ? "" : text));
+				}
+				else if (!Files.isRegularFile(filePath)) {
+					// Pipes and FIFOs can only be read once, so the gzip header is checked on the stream itself
+					reader = streamReader(DecompressingInputStream.open(new FileInputStream(filePath.toFile())));
+				}
+				else if (DecompressingInputStream.isCompressed(filePath)) {
+					// Compressed files are inflated on their own thread while records are processed
+					reader = streamReader(new DecompressingInputStream(Channels.newInputStream(FileChannel.open(filePath, StandardOpenOption.READ))));
+				}
+				else if (rangeEnd >= 0) {
+					reader = new MappedRecordReader(filePath, rangeStart, rangeEnd);
+				}
+				else if (memoryMapped) {
+					reader = new MappedRecordReader(filePath, recordSplitter);
+				}
+				else if (byteRecords || !lines) {
+					reader = byteStreamReader(Channels.newInputStream(FileChannel.open(filePath, StandardOpenOption.READ)));
+				}
+				else {
+					FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+					reader = new StreamRecordReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+				}
+			}
+			return reader;
+		}
+		
+		// Reads records from a stream that cannot be mapped, as bytes or as decoded text
+		private RecordReader streamReader(InputStream input) {
+			if (byteRecords || largeRecordSize > 0 || recordSplitter.getType() != RecordSplitter.SplitType.NEWLINE) {
+				return byteStreamReader(input);
+			}
+			return new StreamRecordReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		}
+		
+		// Reads records as bytes, spilling large ones to disk
+		private RecordReader byteStreamReader(InputStream input) {
+			ByteStreamRecordReader byteReader = new ByteStreamRecordReader(input, recordSplitter);
+			byteReader.setSpillSize(largeRecordSize);
+			return byteReader;
+		}
+		
+		// Releases the input channel, if it was ever opened
+		public void close() {
+			if (reader != null) {
+				try {
+					reader.close();
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				reader = null;
+			}
+		}
+		
 		public Boolean SplitAndAssign() {
-			// Check if the record number is beyond the number of lines
-			if (NR >= lines.size()) {
-				return false; // No more lines to process
+			try {
+				// Check if the input is exhausted, moving on to the next input when there is one
+				while (!getReader().nextRecord()) {
+					if (!nextInput()) {
+						return false; // No more lines to process
+					}
+				}
 			}
-			
-			String line = lines.get(NR);
-			if (line.isBlank()) {
-				// Empty line encountered, increment NR and FNR
-				NR++;
-				FNR++;
-				return false;
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
 			
-			// Update the global variables with the current line and field separator
-			globalVariables.put("$0", new InterpreterDataType(line));
-			
-			// Split the line into fields using the field separator (FS)
-			String[] fields = line.split(globalVariables.get("FS").getValue());
-			
-			for (int i = 0; i < fields.length; i++) {
-				// Update the global variables $1, $2, ..., $NF with field values
-				globalVariables.put("$" + i + 1, new InterpreterDataType(fields[i]));
+			// Update $0 with the current line; fields are split later, only when $n or NF is read
+			ByteRecord bytes = reader.getBytes();
+			boolean large = bytes != null && largeRecordSize > 0 && bytes.length() > largeRecordSize;
+			if (bytes != null && (large ? bytes.isAscii() : byteRecords && (isByteSafeSeparator() || bytes.isAscii()))) {
+				// The record keeps its bytes, so printing it unchanged copies them straight to the output.
+				// This is safe for ASCII records, and for any record when FS can never match inside a
+				// multi-byte character. Large records are only kept when they are ASCII, and are
+				// decoded otherwise, so they follow the same rules whatever the byte-record mode
+				line = bytes;
+				slot(0).setBytes(bytes, 0, bytes.length());
 			}
+			else {
+				line = reader.getRecord();
+				slot(0).setValue((String) line);
+			}
+			scanning = false;
+			fieldCount = 0;
+			fullySplit = false;
 			
-			// Update $NF with the value of the last field
-			globalVariables.put("$NF", new InterpreterDataType(fields[fields.length - 1]));
 			NR++; // Increment record number
 			FNR++; // Increment file record number
+			if (FNR == 1 && inputName != null) {
+				// As in awk, FILENAME is only set once its input has a record, so it is empty in BEGIN
+				globalVariables.get("FILENAME").setValue(inputName);
+			}
 			return true;
 		}
+		
+		// Checks if FS is plain ASCII text, so splitting UTF-8 bytes finds the same fields as splitting characters
+		private boolean isByteSafeSeparator() {
+			String fs = globalVariables.get("FS").getValue();
+			if (!fs.equals(byteSafeSeparator)) {
+				byteSafeSeparator = fs;
+				byteSafe = fs.chars().allMatch(c -> c < 0x80) && (fs.length() == 1 || !FieldSplitter.isRegex(fs));
+			}
+			return byteSafe;
+		}
+		
+		// Returns field $index of the current record, splitting only as far as that field
+		public InterpreterDataType getField(int index) {
+			if (index < 0) {
+				throw new RuntimeException("Field index cannot be negative: " + index);
+			}
+			if (index == 0) {
+				return slot(0);
+			}
+			splitUpTo(index);
+			if (index > fieldCount) {
+				return new InterpreterDataType(); // Fields past NF are empty
+			}
+			return fields[index];
+		}
+		
+		// Assigns field $index. A new $0 is split again when its fields are read; any other field
+		// rebuilds $0 from the fields joined with OFS, so the record is no longer passed through as bytes
+		public InterpreterDataType setField(int index, InterpreterDataType value) {
+			if (index < 0) {
+				throw new RuntimeException("Field index cannot be negative: " + index);
+			}
+			if (index == 0) {
+				line = value.getValue();
+				slot(0).setValue((String) line);
+				scanning = false;
+				fieldCount = 0;
+				fullySplit = false;
+				return slot(0);
+			}
+			splitUpTo(Integer.MAX_VALUE);
+			// Fields between the old NF and index become empty
+			while (fieldCount < index) {
+				slot(++fieldCount).setValue("");
+			}
+			slot(index).set(value);
+			String ofs = globalVariables.get("OFS").getValue();
+			StringBuilder record = new StringBuilder();
+			for (int i = 1; i <= fieldCount; i++) {
+				if (i > 1) {
+					record.append(ofs);
+				}
+				record.append(fields[i].getValue());
+			}
+			line = record.toString();
+			slot(0).setValue((String) line);
+			scanning = true; // The fields are already in their slots, so the new $0 is not split again
+			fullySplit = true;
+			return slot(index);
+		}
+		
+		// Returns the reusable slot for field $index, growing the slot array when needed
+		private InterpreterDataType slot(int index) {
+			if (index >= fields.length) {
+				fields = Arrays.copyOf(fields, Math.max(index + 1, fields.length * 2));
+			}
+			if (fields[index] == null) {
+				fields[index] = new InterpreterDataType();
+			}
+			return fields[index];
+		}
+		
+		// Splits the whole record and returns the number of fields
+		public int getNF() {
+			splitUpTo(Integer.MAX_VALUE);
+			return fieldCount;
+		}
+		
+		// Splits fields of the current record until the given index is reached or the record runs out
+		private void splitUpTo(int index) {
+			if (line == null) {
+				return; // No record has been read yet
+			}
+			if (!scanning) {
+				// First field request for this record; the splitter is only rebuilt when FS changes
+				String fs = globalVariables.get("FS").getValue();
+				if (recordSplitter != null && recordSplitter.getType() == RecordSplitter.SplitType.PARAGRAPH && !fs.equals(" ")) {
+					// In paragraph mode a newline always separates fields as well
+					fs = "\n|" + (fs.length() == 1 ? Pattern.quote(fs) : "(?:" + fs + ")");
+				}
+				if (splitter == null || !splitter.getSeparator().equals(fs)) {
+					splitter = new FieldSplitter(fs);
+				}
+				splitter.reset(line);
+				scanning = true;
+			}
+			
+			while (fieldCount < index && !fullySplit) {
+				if (!splitter.next()) {
+					fullySplit = true;
+					break;
+				}
+				// Store $1, $2, ..., $NF in their slots
+				fieldCount++;
+				if (line instanceof ByteRecord) {
+					slot(fieldCount).setBytes((ByteRecord) line, splitter.getStart(), splitter.getEnd());
+				}
+				else {
+					slot(fieldCount).setValue(splitter.getField());
+				}
+			}
+		}
 
 	}
 
 	private LineHandler lineHandler; // Manages lines and record processing
 	private HashMap <String, InterpreterDataType> globalVariables = new HashMap<String, InterpreterDataType>(); // Stores global variable
 	private HashMap <String, FunctionDefinitionNode> functions = new HashMap<String, FunctionDefinitionNode>(); // Stores function definitions
+	private LinkedHashMap<String, FieldSplitter> splitters = new LinkedHashMap<String, FieldSplitter>(16, 0.75f, true) {
+		// Keep only the most recently used split() separators
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FieldSplitter> eldest) {
+			return size() > MAX_SPLITTERS;
+		}
+	};
+	private static final int MAX_SPLITTERS = 32; // Number of split() separators kept compiled
+	private OutputSink output; // Where print and printf write, System.out when not set
+	private OutputSink redirect; // Where the print or printf being run writes instead, null for output
+	private RedirectionCache redirections = new RedirectionCache(); // Files and commands print has been redirected to
+	private StringBuilder formatted = new StringBuilder(); // Reused by printf and sprintf for the formatted text
+	private NumberFormatter outputFormat = new NumberFormatter(NumberFormatter.DEFAULT_FORMAT); // OFMT, for numbers print writes
+	private NumberFormatter conversionFormat = new NumberFormatter(NumberFormatter.DEFAULT_FORMAT); // CONVFMT, for every other number made a string
+	private int parallelism = 1; // Worker threads used for record-independent programs
+	private boolean offHeapArrays = false; // Keep arrays outside the Java heap, for very large arrays
+	private static final long CHUNK_SIZE = 1 << 25; // Bytes of input handed to a parallel worker at a time
+	private long chunkSize = CHUNK_SIZE; // Bytes of input per chunk, smaller in tests
+	private ByteArrayOutputStream partitionOutput; // Buffered output of a parallel worker
 	
 	public Interpreter(ProgramNode programName, Path filePath) throws IOException {
-		if (filePath != null) {
-			// Load input lines from a file
-			LinkedList<String> input = new LinkedList<String>();
-			input.addAll(Files.readAllLines(filePath));
-			lineHandler = new LineHandler(input); // Initialize line handler with input lines
-			globalVariables.put("FILENAME", new InterpreterDataType(filePath.getFileName().toString()));
-		}
-		else {
-			// No file path provided, initialize lineHandler with an empty list
-			lineHandler = new LineHandler(new LinkedList<String>());
-			globalVariables.put("FILENAME", new InterpreterDataType());
-		}
+		// The input is streamed record by record, so nothing is read here
+		lineHandler = new LineHandler(filePath);
+		globalVariables.put("FILENAME", new InterpreterDataType()); // Set when the first record is read
 		for(FunctionDefinitionNode fdnode : programName.getFunctions()) {
 			functions.put(fdnode.getFuncName(), fdnode);
 		}
@@ -108,6 +423,114 @@ public class Interpreter {
 	}
 	
 	
+	// Returns the splitter for a split() separator, building it the first time the separator is seen
+	private FieldSplitter getSplitter(String separator) {
+		FieldSplitter splitter = splitters.get(separator);
+		if (splitter == null) {
+			splitter = new FieldSplitter(separator);
+			splitters.put(separator, splitter);
+		}
+		return splitter;
+	}
+	
+	// Returns the named array, creating it in localVars if no array by that name exists yet
+	private InterpreterArrayDataType getArray(String name, HashMap<String, InterpreterDataType> localVars) {
+		InterpreterDataType existing = globalVariables.get(name);
+		if (existing == null) {
+			existing = localVars.get(name);
+		}
+		if (existing instanceof InterpreterArrayDataType) {
+			return (InterpreterArrayDataType) existing;
+		}
+		InterpreterArrayDataType array = offHeapArrays ? new OffHeapArrayDataType() : new InterpreterArrayDataType();
+		if (globalVariables.containsKey(name)) {
+			globalVariables.put(name, array);
+		}
+		else {
+			localVars.put(name, array);
+		}
+		return array;
+	}
+	
+	// Sets a global variable before the program runs, as awk's -v option does
+	public void setVariable(String name, String value) {
+		if (globalVariables.containsKey(name)) {
+			globalVariables.get(name).setValue(value);
+		}
+		else {
+			globalVariables.put(name, new InterpreterDataType(value));
+		}
+		if (name.equals("OFMT") || name.equals("CONVFMT")) {
+			updateNumberFormats();
+		}
+	}
+	
+	// Picks up a change to OFMT or CONVFMT
+	private void updateNumberFormats() {
+		String outputText = globalVariables.get("OFMT").getValue();
+		if (!outputFormat.getFormat().equals(outputText)) {
+			outputFormat = new NumberFormatter(outputText);
+		}
+		String conversionText = globalVariables.get("CONVFMT").getValue();
+		if (!conversionFormat.getFormat().equals(conversionText)) {
+			conversionFormat = new NumberFormatter(conversionText);
+		}
+		InterpreterDataType.useConversion(conversionFormat);
+	}
+	
+	// Returns the sink print and printf write to, buffering System.out if no other output was set.
+	// Output to a terminal is flushed after every record, anything else only when the buffer fills.
+	public OutputSink getOutput() {
+		if (output == null) {
+			output = new OutputSink(System.out, OutputSink.standardOutputMode());
+		}
+		return output;
+	}
+	
+	// Sends output to the given stream, buffered unless it already is an OutputSink
+	public void setOutput(OutputStream output) {
+		this.output = output instanceof OutputSink ? (OutputSink) output : new OutputSink(output);
+	}
+	
+	// Returns where the current print or printf writes
+	private OutputSink printOutput() {
+		return redirect != null ? redirect : getOutput();
+	}
+	
+	// Formats parameters 1 to n with the printf format in parameter 0
+	private StringBuilder format(HashMap<String, InterpreterDataType> parameters) {
+		InterpreterDataType[] arguments = new InterpreterDataType[parameters.size() - 1];
+		for (int i = 1; i < parameters.size(); i++) {
+			arguments[i - 1] = parameters.get(String.valueOf(i));
+		}
+		formatted.setLength(0);
+		PrintfFormat.compile(parameters.get("0").getValue()).format(formatted, arguments);
+		return formatted;
+	}
+	
+	public RedirectionCache getRedirections() {
+		return redirections;
+	}
+	
+	// Keeps the arrays the program creates in off-heap memory
+	public void setOffHeapArrays(boolean offHeapArrays) {
+		this.offHeapArrays = offHeapArrays;
+	}
+	
+	// Sets how many threads may run the other blocks when the program allows it
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+	
+	public int getParallelism() {
+		return parallelism;
+	}
+	
+	// Sets how many bytes of input each parallel worker gets at a time
+	public void setChunkSize(long chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+	
 	// Access LineHandler and it's methods
 	public LineHandler getLineHandler() {
 		return lineHandler;
@@ -115,65 +538,73 @@ public class Interpreter {
 	
 	// Helper method to populate the globalVariables HashMap in the constructor
 	private void initializeGlobalVariables() {
+		globalVariables.put("NF", new InterpreterDataType("0"));
+		globalVariables.put("NR", new InterpreterDataType("0"));
+		globalVariables.put("FNR", new InterpreterDataType("0"));
 		globalVariables.put("FS", new InterpreterDataType(" "));
-		globalVariables.put("OFMT", new InterpreterDataType("%.6g"));
+		globalVariables.put("OFMT", new InterpreterDataType(NumberFormatter.DEFAULT_FORMAT));
+		globalVariables.put("CONVFMT", new InterpreterDataType(NumberFormatter.DEFAULT_FORMAT));
 		globalVariables.put("OFS", new InterpreterDataType(" "));
 		globalVariables.put("ORS", new InterpreterDataType("\n"));
+		globalVariables.put("RS", new InterpreterDataType(RecordSplitter.DEFAULT_SEPARATOR));
+		globalVariables.put("RT", new InterpreterDataType(""));
 	}
 	
 	// Helper method to populate the functions HashMap in the constructor
 	private void initializeFunctions() {
 		// Produce output with simple, standardized formatting. 
 		Function<HashMap<String, InterpreterDataType>, String> printImplementation = (parameters) -> {
-			StringBuilder output = new StringBuilder(); 			
+			OutputSink output = printOutput();
+			if (parameters.isEmpty()) {
+				// A bare print prints the record, which is passed through as bytes when it has not changed
+				parameters = new HashMap<String, InterpreterDataType>();
+				parameters.put("0", lineHandler.getField(0));
+			}
 			for (String s : parameters.keySet()) {
-					output.append(parameters.get(s).toString());
-					output.append(" "); // Append the parameter value to the output
+				ByteRecord bytes = parameters.get(s).getBytes();
+				if (bytes != null) {
+					// Byte records are written as they are, without decoding and encoding them again
+					try {
+						bytes.writeTo(output);
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				else if (parameters.get(s).isNumeric()) {
+					// Numbers print with OFMT, while other conversions to a string use CONVFMT
+					output.print(outputFormat.format(parameters.get(s).getNumber()));
+				}
+				else {
+					output.print(parameters.get(s).toString());
+				}
+				output.print(" "); // Append the parameter value to the output
 			}
-			System.out.print(output.toString());
 			return ""; // Return an empty string as required by the Function interface
 		};
 		
 		// You can specify the width to use for each item, as well as various formatting choices for numbers
 		Function<HashMap<String, InterpreterDataType>, String> printfImplementation = (parameters) -> {
 			if (parameters.containsKey("0")) { // Check if a format string is provided
-				String format = parameters.get("0").getValue(); // Get the format string
-				Object[] args = new Object[parameters.size() - 1]; // Create an array to store argument variables
-				int index = 0; // Initialize the index for arguments
-				
-				// Convert parameter values to objects
-				for (int i = 1; ; i++) {
-					String parameterKey = String.valueOf(i); // Form the parameter key
-					if (parameters.containsKey(parameterKey)) {
-						args[index] = parameters.get(parameterKey).getValue(); // Get and store the parameter value
-						index++;
-					}
-					else {
-						break; // Exit the loop if no more parameters
-					}
-				}
-				System.out.printf(format, args);
-			}
-			else {
-				System.out.print(""); // Print nothing if format is not provided
+				printOutput().print(format(parameters)); // Copied from the reused buffer into the output
 			}
 			return ""; // Return an empty string as required by the Function interface
 		};
 		
+		// Closes a file or command that output was redirected to, returning the command's exit status,
+		// 0 for a file, or -1 if it was not open. Its next use opens it again.
+		Function<HashMap<String, InterpreterDataType>, String> closeImplementation = (parameters) -> {
+			if (!parameters.containsKey("0")) {
+				throw new RuntimeException("close requires a file name or command");
+			}
+			return String.valueOf(redirections.close(parameters.get("0").getValue()));
+		};
+		
 		// The sprintf() function is similar to the printf() function and uses the same format specifications 
 	    // as printf(), with the only difference being that instead of printing the output on the screen, it returns 
 		// a string that can be assigned to a variable
 		Function<HashMap<String, InterpreterDataType>, String> sprintfImplementation = (parameters) -> {
-			String format = parameters.get("0").getValue(); // Get the format string
-			Object[] args = new Object[parameters.size() - 1]; // Create an array to store argument variables
-			
-			// Fill in the args array with parameters, skipping the first one (the format string)
-			for (int i = 1; i < parameters.size(); i++) {
-				args[i - 1] = parameters.get(String.valueOf(i)).getValue(); // Get and store parameter values
-			}
-			
-			String result = String.format(format, args); // Format the output using the provided format and arguments
-			return result; // Return the formatted result as a string
+			return format(parameters).toString(); // Return the formatted result as a string
 		};
 		
 		// The getline command returns 1 if it finds a record and 0 if it encounters the end of the file. 
@@ -183,13 +614,13 @@ public class Interpreter {
 				throw new RuntimeException("getline does not accept parameters"); // Check if parameters are provided
 			}
 			
-			if (lineHandler.SplitAndAssign()) {
-				return "1"; // Successfully read a record
-			}
-			else if (lineHandler.getNR() <= lineHandler.getLines().size()) {
+			try {
+				if (lineHandler.SplitAndAssign()) {
+					return "1"; // Successfully read a record
+				}
 				return "0"; // End of file
 			}
-			else {
+			catch (UncheckedIOException e) {
 				return "-1"; // Error reading a record
 			}
 		};
@@ -309,6 +740,10 @@ public class Interpreter {
 		Function<HashMap<String, InterpreterDataType>, String> lengthImplementation = (parameter) -> {
 			// Get the input string from the parameters
 			InterpreterDataType stringTarget = parameter.get("0");
+			if (stringTarget.getBytes() != null) {
+				// Count characters in the bytes, so large records are never decoded
+				return String.valueOf(stringTarget.getBytes().characterCount());
+			}
 			String target = stringTarget.getValue();
 			// Calculate the length of the input string and return it as a string
 			return String.valueOf(target.length());
@@ -320,26 +755,26 @@ public class Interpreter {
 			// Get the input string, array, and field separator from the parameters
 			InterpreterDataType str = parameters.get("0");
 			InterpreterArrayDataType array = (InterpreterArrayDataType) parameters.get("1");
-			InterpreterDataType fieldsep = parameters.get("2");
+			InterpreterDataType fieldsep = parameters.containsKey("2") ? parameters.get("2") : globalVariables.get("FS");
 			
 			if (str == null || array == null || fieldsep == null) {
 				return ""; // Return empty string for null inputs.
 			}
 			
-			// Extract the target string and field separator
-			String target = str.getValue();
-			String separator = fieldsep.getValue();
+			// Split the target string with the cached splitter for this separator
+			FieldSplitter splitter = getSplitter(fieldsep.getValue());
+			splitter.reset(str.getValue());
 			
-			// Split the target string into parts using the separator
-			String[] parts = target.split(separator);
-			
-			// Populate the array with split parts
-			for (int i = 0; i < parts.length; i++) {
-				array.setArrayElements(String.valueOf(i + 1), new InterpreterDataType(parts[i]));
+			// Populate the array with split parts, replacing what it held before
+			array.clear();
+			int count = 0;
+			while (splitter.next()) {
+				count++;
+				array.setArrayElements(NumberFormatter.formatInteger(count), new InterpreterDataType(splitter.getField()));
 			}
 			
 			// Return the number of split parts as a string
-			return String.valueOf(parts.length);
+			return String.valueOf(count);
 		};
 		
 		// Extract substring function from a string. Returns substring of string s at beginning position p 
@@ -352,8 +787,8 @@ public class Interpreter {
 			
 			//Extract the target string and convert the starting position to an integer
 			String target = s.getValue();
-			int start = Integer.parseInt(p.getValue()) - 1; // AWK string indices start from 1
-			int length = (n != null) ? Integer.parseInt(n.getValue()) : target.length() - start;
+			int start = (int) p.getNumber() - 1; // AWK string indices start from 1
+			int length = (n != null) ? (int) n.getNumber() : target.length() - start;
 			
 			// Ensure that the starting position is within valid bounds
 			if (start < 0) {
@@ -394,6 +829,7 @@ public class Interpreter {
 		};
 		
 		functions.put("print", new BIFDN(true, printImplementation));
+		functions.put("close", new BIFDN(false, closeImplementation));
 		functions.put("printf", new BIFDN(true, printfImplementation));
 		functions.put("sprintf", new BIFDN(true, sprintfImplementation));
 		functions.put("getline", new BIFDN(false, getlineImplementation));
@@ -438,23 +874,33 @@ public class Interpreter {
 			if (target instanceof VariableReferenceNode) {
 				VariableReferenceNode variable = (VariableReferenceNode) target;
 				InterpreterDataType expression = GetIDT(assignmentNode.getExpression(), localVars);
-				if (globalVariables.containsKey(variable.getVariableName())) {
-					globalVariables.get(variable.getVariableName()).setValue(expression.getValue());
+				if (variable.getIndexExpression().isPresent()) {
+					// Array element, creating the array the first time it is assigned to
+					InterpreterDataType index = GetIDT(variable.getIndexExpression().get(), localVars);
+					InterpreterArrayDataType array = getArray(variable.getVariableName(), localVars);
+					InterpreterDataType element = expression.copy();
+					array.setArrayElements(index, element);
+					return element;
 				}
-				else {
-					localVars.put(variable.getVariableName(), expression);
+				if (globalVariables.containsKey(variable.getVariableName())) {
+					InterpreterDataType global = globalVariables.get(variable.getVariableName());
+					global.set(expression); // Keeps a number as a number, without formatting it
+					if (variable.getVariableName().equals("OFMT") || variable.getVariableName().equals("CONVFMT")) {
+						updateNumberFormats();
+					}
+					return global;
 				}
+				// Copy the value, since field slots and other IDTs are reused
+				InterpreterDataType local = expression.copy();
+				localVars.put(variable.getVariableName(), local);
+				return local;
 			}
-			else if (target instanceof OperationNode && ((OperationNode) target).getType() == OperationNode.AWKOperation.DOLLAR) {
-				String variableIndex = null; 
-				InterpreterDataType result = localVars.get("$" + variableIndex);
-				if (result == null) {
-					throw new RuntimeException("Variable $" + variableIndex + " is not defined");
-				}
-				
-				InterpreterDataType value = GetIDT(assignmentNode.getExpression(), localVars);
-				localVars.put("$" + variableIndex, result);
-				return result;
+			else if (target instanceof OperationNode && ((OperationNode) target).getOperation() == OperationNode.AWKOperation.DOLLAR) {
+				// The parser puts the field expression on the right, so accept either side
+				OperationNode field = (OperationNode) target;
+				Node fieldExpression = field.getLeft() != null ? field.getLeft() : field.getRight().get();
+				int fieldIndex = (int) GetIDT(fieldExpression, localVars).getNumber();
+				return lineHandler.setField(fieldIndex, GetIDT(assignmentNode.getExpression(), localVars));
 			}
 			else {
 				throw new RuntimeException("Invalid assignment target");
@@ -498,25 +944,41 @@ public class Interpreter {
 			VariableReferenceNode vr = (VariableReferenceNode) node;
 			String variableName = vr.getVariableName();
 			InterpreterDataType idt;
+			if (variableName.equals("NF")) {
+				// NF is the only reason to split the whole record, so it is only counted when read
+				globalVariables.get("NF").setValue(String.valueOf(lineHandler.getNF()));
+			}
+			else if (variableName.equals("NR")) {
+				// The record counters live in the LineHandler and are copied out when read
+				globalVariables.get("NR").setValue(String.valueOf(lineHandler.getNR()));
+			}
+			else if (variableName.equals("FNR")) {
+				globalVariables.get("FNR").setValue(String.valueOf(lineHandler.getFNR()));
+			}
+			else if (variableName.equals("RT")) {
+				globalVariables.get("RT").setValue(lineHandler.getRT());
+			}
 			if ((idt = globalVariables.get(vr.getVariableName())) != null) {
 				if(!(idt instanceof InterpreterArrayDataType)) {
 					return idt;
 				}
-				if (vr.getIndexExpression() == null) {
+				if (vr.getIndexExpression().isEmpty()) {
 					return idt;
 				}
 				InterpreterArrayDataType iadt = (InterpreterArrayDataType) idt;
-				return iadt.getArrayElement(GetIDT(vr.getIndexExpression().get(), localVars).toString());
+				InterpreterDataType element = iadt.getArrayElement(GetIDT(vr.getIndexExpression().get(), localVars));
+				return element != null ? element : new InterpreterDataType("");
 			}
 			else if ((idt = localVars.get(vr.getVariableName())) != null) {
 				if(!(idt instanceof InterpreterArrayDataType)) {
 					return idt;
 				}
-				if (vr.getIndexExpression() == null) {
+				if (vr.getIndexExpression().isEmpty()) {
 					return idt;
 				}
 				InterpreterArrayDataType iadt = (InterpreterArrayDataType) idt;
-				return iadt.getArrayElement(GetIDT(vr.getIndexExpression().get(), localVars).toString());
+				InterpreterDataType element = iadt.getArrayElement(GetIDT(vr.getIndexExpression().get(), localVars));
+				return element != null ? element : new InterpreterDataType("");
 			}
 			return new InterpreterDataType("");
 		}
@@ -540,36 +1002,8 @@ public class Interpreter {
 			case DIVIDE:
 			case EXPONENT:
 			case MODULO:
-				float leftValue = 0;
-				float rightValue = 0;
-				// Convert to float, perform operation, convert to string
-				try { leftValue = Float.parseFloat(leftIDT.getValue());}
-				catch(Exception e) { leftValue = 0;}
-				try{ rightValue = Float.parseFloat(rightIDT.getValue());}
-				catch(Exception e) { rightValue = 0;}
-				float result = 0;
-
-				switch (operation) {
-				case ADD:
-					result = leftValue + rightValue;
-					break;
-				case SUBTRACT:
-					result = leftValue - rightValue;
-					break;
-				case MULTIPLY:
-					result = leftValue * rightValue;
-					break;
-				case DIVIDE:
-					result = leftValue / rightValue;
-					break;
-				case EXPONENT:
-					result = (float) Math.pow(leftValue, rightValue);
-					break;
-				case MODULO:
-					result = leftValue % rightValue;
-					break;
-				}
-				return new InterpreterDataType(String.valueOf(result));
+				// Operands are parsed at most once, and the result stays a number until a string is needed
+				return calculate(operation, leftIDT, rightIDT);
 				
 			// Compares: < <= != == > >=
 			case LT:
@@ -578,13 +1012,18 @@ public class Interpreter {
 			case EQ:
 			case GT:
 			case GE:
-				// Compare as floats if both sides convert to float, otherwise compare as strings
+				// Compare as numbers if both sides are numbers, otherwise compare as strings
 				boolean comparisonResult = false;
 				
-				try {
+				if (leftIDT.isNumber() && rightIDT.isNumber()) {
 					
-					float leftFloat = Float.parseFloat(leftIDT.getValue());
-					float rightFloat = Float.parseFloat(rightIDT.getValue());
+					double leftFloat = leftIDT.getNumber();
+					double rightFloat = rightIDT.getNumber();
+					if (leftIDT.isIntegral() && rightIDT.isIntegral()) {
+						// Whole numbers compare as longs, which stay exact past 2^53
+						leftFloat = Long.compare(leftIDT.getInteger(), rightIDT.getInteger());
+						rightFloat = 0;
+					}
 					
 					switch (operation) {
 					case LT:
@@ -608,8 +1047,8 @@ public class Interpreter {
 					}
 					
 				}
-				catch (NumberFormatException e) {
-					// Conversion to float failed, compare as strings
+				else {
+					// At least one side is not a number, compare as strings
 					switch (operation) {
 					case LT:
 						comparisonResult = leftIDT.getValue().compareTo(rightIDT.getValue()) < 0;
@@ -637,21 +1076,15 @@ public class Interpreter {
 			// Boolean operations: and, or, not
 			// Evaluate and convert to boolean using AWK's rules
 			case AND:
-				float andLeft = Float.parseFloat(leftIDT.getValue());
-				float andRight = Float.parseFloat(rightIDT.getValue());
-				if (Float.valueOf(andLeft) == andLeft && Float.valueOf(andRight) == andRight) {
+				if (isTrue(leftIDT) && isTrue(rightIDT)) {
 					return new InterpreterDataType("1");
 				}
 				else {
 					return new InterpreterDataType("0");
 				}
 				
-				
-				
 			case OR:
-				float orLeft = Float.parseFloat(leftIDT.getValue());
-				float orRight = Float.parseFloat(rightIDT.getValue());
-				if (Float.valueOf(orLeft) == orLeft || Float.valueOf(orRight) == orRight) {
+				if (isTrue(leftIDT) || isTrue(rightIDT)) {
 					return new InterpreterDataType("1");
 				}
 				else {
@@ -659,9 +1092,8 @@ public class Interpreter {
 				}
 					
 			case NOT:
-				float notLeft = Float.parseFloat(leftIDT.getValue());
-				float notRight = Float.parseFloat(rightIDT.getValue());
-				if (Float.valueOf(notLeft) != notLeft || Float.valueOf(notRight) != notRight) {
+				// The parser puts the operand on the right, so accept either side
+				if (!isTrue(leftIDT != null ? leftIDT : rightIDT)) {
 					return new InterpreterDataType("1");
 				}
 				else {
@@ -702,55 +1134,36 @@ public class Interpreter {
 				}
 				
 			case DOLLAR:
-				String dollar = GetIDT(left, localVars).getValue();
-				return new InterpreterDataType("$" + dollar);
+				// The parser puts the field expression on the right, so accept either side
+				int fieldIndex = (int) (leftIDT != null ? leftIDT : rightIDT).getNumber();
+				return lineHandler.getField(fieldIndex);
 			
 			// Handler pre and unary ++a, --a, +a, -a
 			case PREINC:
 			case PREDEC:
 			case UNARYPOS:
 			case UNARYNEG:
-				float rightValue1 = Float.parseFloat(rightIDT.getValue());
-				float preResult = 0;
-				
 				switch(operation) {
 				case PREINC:
-					preResult = rightValue1 + 1;
-					break;
+					return step(rightIDT, 1);
 					
 				case PREDEC:
-					preResult = rightValue1 - 1;
-					break;
+					return step(rightIDT, -1);
 					
 				case UNARYPOS:
-					preResult = +rightValue1;
-					break;
+					return rightIDT.isIntegral() ? new InterpreterDataType(rightIDT.getInteger()) : new InterpreterDataType(rightIDT.getNumber());
 					
-				case UNARYNEG:
-					preResult = -rightValue1;
-					break;
+				default:
+					if (rightIDT.isIntegral() && rightIDT.getInteger() != 0 && rightIDT.getInteger() != Long.MIN_VALUE) {
+						return new InterpreterDataType(-rightIDT.getInteger());
+					}
+					return new InterpreterDataType(-rightIDT.getNumber()); // -0 stays a double so it prints as -0
 				}
-				
-				return new InterpreterDataType(String.valueOf(preResult));
 			
 			// Handle post a++ a--
 			case POSTINC:
 			case POSTDEC:
-				float leftValue1 = Float.parseFloat(leftIDT.getValue());
-				//float rightValue1 = Float.parseFloat(rightIDT.getValue());
-				float postResult = 0;
-				
-				switch (operation) {	
-				case POSTINC:
-					postResult = leftValue1 + 1;
-					break;
-
-				case POSTDEC:
-					postResult = leftValue1 - 1;
-					break;
-				}
-				
-				return new InterpreterDataType(String.valueOf(postResult));
+				return step(leftIDT, operation == OperationNode.AWKOperation.POSTINC ? 1 : -1);
 				
 				
 			case CONCATENATION: 
@@ -770,9 +1183,8 @@ public class Interpreter {
 								throw new RuntimeException("Right-hand side of IN is not an array");
 							}
 							
-							String leftSideValue = leftIDT.getValue();
 							InterpreterArrayDataType array = (InterpreterArrayDataType) arrayIDT;
-							if (array.getArrayElement(leftSideValue) != null) {
+							if (array.getArrayElement(leftIDT) != null) {
 								return new InterpreterDataType("1");
 							}
 							else {
@@ -797,6 +1209,72 @@ public class Interpreter {
 		return null; // Default return value
 	}
 	
+	// Applies + - * / % or ^ to two values. Whole numbers use long arithmetic when the result is
+	// exact, so counters and indices never go through floating point; anything else uses doubles.
+	private InterpreterDataType calculate(OperationNode.AWKOperation operation, InterpreterDataType left, InterpreterDataType right) {
+		if (left.isIntegral() && right.isIntegral()) {
+			long leftValue = left.getInteger();
+			long rightValue = right.getInteger();
+			try {
+				switch (operation) {
+				case ADD:
+					return new InterpreterDataType(Math.addExact(leftValue, rightValue));
+				case SUBTRACT:
+					return new InterpreterDataType(Math.subtractExact(leftValue, rightValue));
+				case MULTIPLY:
+					return new InterpreterDataType(Math.multiplyExact(leftValue, rightValue));
+				case DIVIDE:
+					if (rightValue != 0 && leftValue % rightValue == 0 && !(leftValue == Long.MIN_VALUE && rightValue == -1)) {
+						return new InterpreterDataType(leftValue / rightValue);
+					}
+					break;
+				case MODULO:
+					if (rightValue != 0) {
+						return new InterpreterDataType(leftValue % rightValue);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+			catch (ArithmeticException e) {
+				// Too big for a long, so fall back to doubles like other awks
+			}
+		}
+		double leftValue = left.getNumber();
+		double rightValue = right.getNumber();
+		switch (operation) {
+		case ADD:
+			return new InterpreterDataType(leftValue + rightValue);
+		case SUBTRACT:
+			return new InterpreterDataType(leftValue - rightValue);
+		case MULTIPLY:
+			return new InterpreterDataType(leftValue * rightValue);
+		case DIVIDE:
+			return new InterpreterDataType(leftValue / rightValue);
+		case EXPONENT:
+			return new InterpreterDataType(Math.pow(leftValue, rightValue));
+		default:
+			return new InterpreterDataType(leftValue % rightValue);
+		}
+	}
+	
+	// AWK truth: numbers and numeric strings are true unless 0, other strings unless empty
+	private static boolean isTrue(InterpreterDataType value) {
+		return value.isNumber() ? value.getNumber() != 0 : !value.getValue().isEmpty();
+	}
+	
+	// Adds 1 or -1 for ++ and --, on a long when the value is a whole number
+	private InterpreterDataType step(InterpreterDataType value, int step) {
+		if (value.isIntegral()) {
+			long integer = value.getInteger();
+			if (step > 0 ? integer < Long.MAX_VALUE : integer > Long.MIN_VALUE) {
+				return new InterpreterDataType(integer + step);
+			}
+		}
+		return new InterpreterDataType(value.getNumber() + step);
+	}
+	
 	public String RunFunctionCall(FunctionCallNode functionCallNode, HashMap<String, InterpreterDataType> localVars) throws Exception {
 		// Find the function definition
 		String functionName = functionCallNode.getFunctionName();
@@ -811,7 +1289,29 @@ public class Interpreter {
 			BIFDN builtIn = (BIFDN) functions.get(functionName);
 			for (int i = 0; i < functionCallNode.getParameterCount(); i++) {
 				// Add parameters
-				paramMap.put("" + i, GetIDT(functionCallNode.getParameters().get(i), localVars));
+				Node parameter = functionCallNode.getParameters().get(i);
+				if (i == 1 && functionName.equals("split") && parameter instanceof VariableReferenceNode
+						&& ((VariableReferenceNode) parameter).getIndexExpression().isEmpty()) {
+					// split creates the array it fills
+					paramMap.put("1", getArray(((VariableReferenceNode) parameter).getVariableName(), localVars));
+					continue;
+				}
+				paramMap.put("" + i, GetIDT(parameter, localVars));
+			}
+			if (functionCallNode.getRedirection() != null) {
+				// print > file, >> file or | command: run it against that target's sink
+				String target = GetIDT(functionCallNode.getRedirectTarget(), localVars).getValue();
+				if (functionCallNode.getRedirection() == RedirectionCache.Kind.PIPE) {
+					getOutput().flush(); // The command shares standard output, so write ours first
+				}
+				redirect = target.equals("/dev/stdout") ? getOutput() : redirections.get(target, functionCallNode.getRedirection());
+				try {
+					builtIn.execute(paramMap);
+				}
+				finally {
+					redirect = null;
+				}
+				return "";
 			}
 			String functions = builtIn.execute(paramMap); // Execute the function
 			if (functions == null) {
@@ -841,6 +1341,7 @@ public class Interpreter {
 			// Handled in GetIDT, so we simply call it here
 			AssignmentNode assignmentNode = (AssignmentNode) stmt;
 			GetIDT(assignmentNode, locals);
+			return new ReturnType(ReturnType.returnTypes.NONE);
 		}
 		
 		if (stmt instanceof BreakNode) {
@@ -875,7 +1376,7 @@ public class Interpreter {
 				else {
 					// Delete the specific indices from the array
 					for (ConstantNode index : deleteIndices) {
-						array.getElements().remove(index);
+						array.removeArrayElement(index.getValue());
 					}
 				}
 			}
@@ -934,6 +1435,9 @@ public class Interpreter {
 			// Identify the array
 			String arrayName = forEach.getIterable().toString();
 			InterpreterDataType array = locals.get(arrayName);
+			if (array == null) {
+				array = globalVariables.get(arrayName);
+			}
 			
 			if (array == null || !(array instanceof InterpreterArrayDataType)) {
 				throw new RuntimeException("For each loop requires an array");
@@ -941,11 +1445,17 @@ public class Interpreter {
 			
 			// Array must be an IADT
 			InterpreterArrayDataType arrayData = (InterpreterArrayDataType) array;
+			String keyName = forEach.getInitialize().toString();
 			
-			// Loop over every key in the array's HashMap
-			for (String key : arrayData.getElements().keySet()) {
+			// Loop over a copy of the keys, so the body may change the array
+			for (String key : arrayData.getKeys()) {
 				// Set the variable to the key, then interpret the list of statements in the ForEach loop
-				locals.put(forEach.getIterable().toString(), arrayData.getArrayElement(key));
+				if (globalVariables.containsKey(keyName)) {
+					globalVariables.get(keyName).setValue(key);
+				}
+				else {
+					locals.put(keyName, new InterpreterDataType(key));
+				}
 				ReturnType result =  InterpretListOfStatements(forEach.getForEachBlock().getStatements(), locals);
 				
 				if (result.getReturnType() == ReturnType.returnTypes.BREAK) {
@@ -974,14 +1484,11 @@ public class Interpreter {
 				// Check if the condition is empty or evaluates to true
 				if (ifNode.getCondition().isEmpty() || GetIDT(ifNode.getCondition().get(), locals).getValue().equals("1")) {
 					// Condition is true, execute the statements
-					ReturnType result = InterpretListOfStatements(ifNode.getIfBlock().getStatements(), locals);
-					
-					if (result.getReturnType() != ReturnType.returnTypes.NONE) {
-						return result; // Return if the result is not None
-					}
+					// Only the first matching branch runs
+					return InterpretListOfStatements(ifNode.getIfBlock().getStatements(), locals);
 				}
 				// Move to the next IfNode in the linked list
-				ifNode = ifNode.getNextIf().get();
+				ifNode = ifNode.getNextIf().orElse(null);
 			}
 			
 			return new ReturnType(ReturnType.returnTypes.NONE);
@@ -1038,26 +1545,237 @@ public class Interpreter {
 	}
 	
 	public void InterpretProgram(ProgramNode Program) throws Exception {
-		// Run BEGIN blocks
-		for (BlockNode beginBlock : Program.getBeginBlocks()) {
-			InterpretBlock(beginBlock);
-		} 
-		
-		// Process records
-		for (BlockNode otherBlocks : Program.getOtherBlocks()) {
-			// Reset NR and FNR to 0
-			lineHandler.setNR(0);
-			lineHandler.setFNR(0);
-			while (lineHandler.SplitAndAssign()) {
-				// Run other blocks
-				InterpretBlock(otherBlocks);
-			}
-		}
-		
-		// Run END blocks
-		for (BlockNode endBlock : Program.getEndBlocks()) {
-			InterpretBlock(endBlock);
-		} 
+		updateNumberFormats();
+		try {
+			// Run BEGIN blocks
+			for (BlockNode beginBlock : Program.getBeginBlocks()) {
+				InterpretBlock(beginBlock);
+			} 
+			
+			// Process records: each record is read and split once, then every other block runs against it
+			HashMap<String, ProgramAnalyzer.MergeType> merges = null;
+			if (!Program.getOtherBlocks().isEmpty() && parallelism > 1 && lineHandler.isPartitionable()) {
+				merges = new ProgramAnalyzer(Program).getMergeableUpdates();
+			}
+			if (merges != null) {
+				InterpretRecordsInParallel(Program, merges);
+			}
+			else if (!Program.getOtherBlocks().isEmpty()) {
+				OutputSink output = getOutput();
+				while (lineHandler.SplitAndAssign()) {
+					for (BlockNode otherBlock : Program.getOtherBlocks()) {
+						// Run other blocks
+						InterpretBlock(otherBlock);
+					}
+					output.endRecord();
+				}
+			}
+			
+			lineHandler.close();
+			
+			// Run END blocks
+			for (BlockNode endBlock : Program.getEndBlocks()) {
+				InterpretBlock(endBlock);
+			} 
+		}
+		finally {
+			// Buffered output is only written out here, or when the buffer fills
+			getOutput().flush();
+			redirections.closeAll();
+		}
+	}
+	
+	// Runs the other blocks over chunks of the input file on several threads. Chunks end on record
+	// boundaries and their output is written in input order, with a bounded number in flight. The
+	// variables and arrays in merges are updated by each worker on its own and merged in chunk order.
+	private void InterpretRecordsInParallel(ProgramNode Program, HashMap<String, ProgramAnalyzer.MergeType> merges) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		ArrayDeque<Future<Interpreter>> pending = new ArrayDeque<>();
+		AtomicInteger records = new AtomicInteger();
+		HashMap<String, InterpreterDataType> snapshot = snapshotGlobals(merges);
+		try (FileChannel channel = FileChannel.open(lineHandler.filePath, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long start = 0;
+			while (start < size || !pending.isEmpty()) {
+				// Keep every worker busy, plus one chunk each waiting
+				while (start < size && pending.size() < parallelism * 2) {
+					long chunkStart = start;
+					long chunkEnd = nextRecordBoundary(channel, Math.min(start + chunkSize, size));
+					pending.add(pool.submit(() -> InterpretRange(Program, chunkStart, chunkEnd, merges, snapshot, records)));
+					start = chunkEnd;
+				}
+				try {
+					Interpreter worker = pending.poll().get();
+					worker.partitionOutput.writeTo(getOutput());
+					getOutput().endRecord();
+					mergeUpdates(worker.globalVariables, merges);
+				}
+				catch (ExecutionException e) {
+					throw new RuntimeException("Parallel worker failed: " + e.getCause().getMessage(), e.getCause());
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		lineHandler.setNR(records.get());
+		lineHandler.setFNR(records.get());
+		if (records.get() > 0) {
+			globalVariables.get("FILENAME").setValue(lineHandler.inputName); // Workers set their own copies
+		}
+	}
+	
+	// Copies the globals left by the BEGIN blocks, before the first worker starts, so workers never read
+	// the variables the merges write to. Sums are left out, as each chunk counts from empty. Every
+	// copy has its string and number worked out here, so reading it from several threads changes nothing
+	private HashMap<String, InterpreterDataType> snapshotGlobals(HashMap<String, ProgramAnalyzer.MergeType> merges) {
+		HashMap<String, InterpreterDataType> snapshot = new HashMap<String, InterpreterDataType>();
+		for (String name : globalVariables.keySet()) {
+			InterpreterDataType value = globalVariables.get(name);
+			if (merges.get(name) == ProgramAnalyzer.MergeType.SUM) {
+				continue;
+			}
+			if (value instanceof InterpreterArrayDataType) {
+				InterpreterArrayDataType array = copyArray((InterpreterArrayDataType) value);
+				for (String key : array.getKeys()) {
+					settle(array.getArrayElement(key));
+				}
+				snapshot.put(name, array);
+			}
+			else {
+				snapshot.put(name, settle(value.copy()));
+			}
+		}
+		return snapshot;
+	}
+	
+	// Fills in both forms of a value, so later reads only look at it
+	private static InterpreterDataType settle(InterpreterDataType value) {
+		value.getValue();
+		value.getNumber();
+		return value;
+	}
+	
+	// Runs the other blocks over one chunk of the input in a separate interpreter, which is returned
+	// with its output and its own copies of the merged variables
+	private Interpreter InterpretRange(ProgramNode Program, long start, long end, HashMap<String, ProgramAnalyzer.MergeType> merges,
+			HashMap<String, InterpreterDataType> snapshot, AtomicInteger records) throws Exception {
+		Interpreter worker = new Interpreter(Program, lineHandler.filePath);
+		// Workers start from the snapshot. Minimums and maximums keep their starting value, which may
+		// never be beaten, in an array of the worker's own. Other arrays are only read, so they are shared
+		for (String name : snapshot.keySet()) {
+			InterpreterDataType value = snapshot.get(name);
+			if (value instanceof InterpreterArrayDataType && merges.containsKey(name)) {
+				worker.globalVariables.put(name, copyArray((InterpreterArrayDataType) value));
+			}
+			else if (value instanceof InterpreterArrayDataType) {
+				worker.globalVariables.put(name, value);
+			}
+			else {
+				worker.globalVariables.put(name, value.copy());
+			}
+		}
+		// OFMT and CONVFMT as BEGIN left them, with CONVFMT used by the values this thread converts
+		worker.outputFormat = outputFormat;
+		worker.conversionFormat = conversionFormat;
+		InterpreterDataType.useConversion(conversionFormat);
+		worker.offHeapArrays = offHeapArrays;
+		worker.lineHandler.setByteRecords(lineHandler.isByteRecords());
+		worker.lineHandler.setLargeRecordSize(lineHandler.getLargeRecordSize());
+		worker.lineHandler.setRange(start, end);
+		
+		worker.partitionOutput = new ByteArrayOutputStream();
+		worker.setOutput(worker.partitionOutput);
+		while (worker.lineHandler.SplitAndAssign()) {
+			for (BlockNode otherBlock : Program.getOtherBlocks()) {
+				worker.InterpretBlock(otherBlock);
+			}
+		}
+		worker.lineHandler.close();
+		worker.getOutput().flush();
+		records.addAndGet(worker.lineHandler.getNR());
+		return worker;
+	}
+	
+	// Makes a copy of an array for a worker, kept off the heap if this interpreter keeps its arrays there
+	private InterpreterArrayDataType copyArray(InterpreterArrayDataType array) {
+		InterpreterArrayDataType copy = offHeapArrays ? new OffHeapArrayDataType() : new InterpreterArrayDataType();
+		for (String key : array.getKeys()) {
+			copy.setArrayElements(key, array.getArrayElement(key).copy());
+		}
+		return copy;
+	}
+	
+	// Folds a worker's copies of the merged variables and arrays into this interpreter's
+	private void mergeUpdates(HashMap<String, InterpreterDataType> workerVariables, HashMap<String, ProgramAnalyzer.MergeType> merges) {
+		for (String name : merges.keySet()) {
+			InterpreterDataType workerValue = workerVariables.get(name);
+			if (workerValue == null) {
+				continue; // Never updated in that chunk
+			}
+			ProgramAnalyzer.MergeType type = merges.get(name);
+			if (workerValue instanceof InterpreterArrayDataType) {
+				InterpreterArrayDataType array = getArray(name, globalVariables);
+				InterpreterArrayDataType workerArray = (InterpreterArrayDataType) workerValue;
+				for (String key : workerArray.getKeys()) {
+					InterpreterDataType current = array.getArrayElement(key);
+					if (current == null) {
+						array.setArrayElements(key, workerArray.getArrayElement(key).copy());
+					}
+					else {
+						array.setArrayElements(key, mergeValues(type, current, workerArray.getArrayElement(key)).copy());
+					}
+				}
+			}
+			else if (globalVariables.containsKey(name)) {
+				InterpreterDataType current = globalVariables.get(name);
+				current.set(mergeValues(type, current, workerValue));
+			}
+			else {
+				globalVariables.put(name, workerValue.copy());
+			}
+		}
+	}
+	
+	// Combines two partial results the same way the sequential updates would have
+	private InterpreterDataType mergeValues(ProgramAnalyzer.MergeType type, InterpreterDataType current, InterpreterDataType update) {
+		if (type == ProgramAnalyzer.MergeType.SUM) {
+			// Values that are not numbers count as 0, as in the arithmetic operations
+			return calculate(OperationNode.AWKOperation.ADD, current, update);
+		}
+		int order;
+		if (current.isNumber() && update.isNumber()) {
+			order = current.isIntegral() && update.isIntegral() ? Long.compare(update.getInteger(), current.getInteger())
+					: Double.compare(update.getNumber(), current.getNumber());
+		}
+		else {
+			// Compare as strings, like the relational operators do
+			order = update.getValue().compareTo(current.getValue());
+		}
+		boolean updateWins = type == ProgramAnalyzer.MergeType.MAX ? order > 0 : order < 0;
+		return updateWins ? update : current;
+	}
+	
+	// Finds the first record boundary at or after the given offset
+	private long nextRecordBoundary(FileChannel channel, long offset) throws IOException {
+		if (offset == 0 || offset >= channel.size()) {
+			return Math.min(offset, channel.size());
+		}
+		ByteBuffer scan = ByteBuffer.allocate(8192);
+		long position = offset - 1; // A record ending right before the offset makes the offset a boundary
+		while (true) {
+			scan.clear();
+			int count = channel.read(scan, position);
+			if (count <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < count; i++) {
+				if (scan.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += count;
+		}
 	}
 	
 	public void InterpretBlock(BlockNode Block) throws Exception {
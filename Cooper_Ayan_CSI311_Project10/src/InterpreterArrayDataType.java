@@ -1,26 +1,347 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-
+import java.util.Map;
+	
 public class InterpreterArrayDataType extends InterpreterDataType{
-
-	// A HashMap to store elements of the array
+	
+	private static final InterpreterDataType[] EMPTY = new InterpreterDataType[0];
+	private static final double[] NO_NUMBERS = new double[0];
+	private static final long[] NO_BITS = new long[0];
+	private static final int MIN_DENSE = 16; // Smallest dense segment worth allocating
+	private static final int MAX_KEY_DIGITS = 9; // Longest key that may go in the dense segment
+	private static final int MAX_KEY = 999999999; // Largest key with MAX_KEY_DIGITS digits
+	private static final long MAX_EXACT = 1L << 53; // Largest whole number a double holds exactly
+	
+	// True while every element is a number. The values are then kept as doubles in denseNumbers and
+	// numberTable; the first value that is not a number moves them all to objects for good.
+	private boolean numbers = true;
+	
+	// Elements whose key is a small non-negative integer, indexed by that integer. Keys below the
+	// segment length are only ever stored here, so a lookup never has to check both places.
+	private InterpreterDataType[] dense = EMPTY;
+	private double[] denseNumbers = NO_NUMBERS; // The dense segment while the array holds numbers
+	private long[] denseFilled = NO_BITS; // Bit set of the slots in denseNumbers that hold an element
+	private int denseCount; // Number of elements in the dense segment
+	
+	// A HashMap to store elements of the array that do not fit the dense segment
 	private HashMap<String, InterpreterDataType> elements;
+	private NumberTable numberTable = new NumberTable(); // The same, while the array holds numbers
+	private int sparseIntegers; // Keys outside the dense segment that could move to it if it grows
+	
+	public InterpreterArrayDataType() {
+	}
 	
+	// Creates an array holding a copy of the given elements
 	public InterpreterArrayDataType(HashMap<String, InterpreterDataType> elements) {
-		this.elements = elements;
+		for (Map.Entry<String, InterpreterDataType> element : elements.entrySet()) {
+			setArrayElements(element.getKey(), element.getValue());
+		}
 	}
 	
-	// Get an array element by it's index
+	// Get an array element by it's index. While the array holds numbers the element is made for the
+	// caller; elements only change by storing a new value, so nothing is lost.
 	public InterpreterDataType getArrayElement(String index) {
-		return elements.get(index);
+		int position = denseIndex(index);
+		if (position >= 0 && position < denseLength()) {
+			return loadDense(position);
+		}
+		return loadSparse(index);
+	}
+	
+	// Get an array element by the value of an index expression, so a[1], a["1"] and a[2 / 2] are the
+	// same element. Whole numbers are used directly, without making a string of them.
+	public InterpreterDataType getArrayElement(InterpreterDataType index) {
+		int position = denseIndex(index);
+		if (position >= 0) {
+			if (position < denseLength()) {
+				return loadDense(position);
+			}
+			return sparseIntegers > 0 ? loadSparse(NumberFormatter.formatInteger(position)) : null;
+		}
+		return loadSparse(index.getValue());
 	}
 	
 	// Set an array element at a specific index
 	public void setArrayElements(String index, InterpreterDataType value) {
-		elements.put(index, value);
+		checkNumber(value);
+		int position = denseIndex(index);
+		if (position >= 0 && setDense(position, value)) {
+			return;
+		}
+		putSparse(index, position, value);
+	}
+	
+	// Set an array element by the value of an index expression
+	public void setArrayElements(InterpreterDataType index, InterpreterDataType value) {
+		checkNumber(value);
+		int position = denseIndex(index);
+		if (position >= 0) {
+			if (!setDense(position, value)) {
+				putSparse(NumberFormatter.formatInteger(position), position, value);
+			}
+			return;
+		}
+		putSparse(index.getValue(), position, value);
+	}
+	
+	// Removes an element, returning it, or null if there was none
+	public InterpreterDataType removeArrayElement(String index) {
+		int position = denseIndex(index);
+		if (position >= 0 && position < denseLength()) {
+			InterpreterDataType removed = loadDense(position);
+			if (removed != null) {
+				clearDense(position);
+				denseCount--;
+				if (denseCount < denseLength() / 8 && denseLength() > MIN_DENSE) {
+					demote();
+				}
+			}
+			return removed;
+		}
+		InterpreterDataType removed = removeSparse(index);
+		if (removed != null && position >= 0) {
+			sparseIntegers--;
+		}
+		return removed;
+	}
+	
+	// Returns the keys, dense ones first in order; the list is a copy, so the array may change while it is used
+	public ArrayList<String> getKeys() {
+		ArrayList<String> keys = new ArrayList<String>(size());
+		for (int i = 0; i < denseLength(); i++) {
+			if (isFilled(i)) {
+				keys.add(NumberFormatter.formatInteger(i));
+			}
+		}
+		if (numbers) {
+			numberTable.addKeys(keys);
+		}
+		else {
+			keys.addAll(elements.keySet());
+		}
+		return keys;
+	}
+	
+	// Removes every element, keeping the dense segment for the next fill
+	public void clear() {
+		if (numbers) {
+			Arrays.fill(denseFilled, 0);
+			numberTable.clear();
+		}
+		else {
+			Arrays.fill(dense, null);
+			elements.clear();
+		}
+		denseCount = 0;
+		sparseIntegers = 0;
+	}
+	
+	// Number of elements in the array
+	public int size() {
+		return denseCount + (numbers ? numberTable.size() : elements.size());
+	}
+	
+	// Checks if the array still keeps its elements as doubles
+	public boolean holdsNumbers() {
+		return numbers;
+	}
+	
+	// Moves the array to objects before it stores a value that a double would not keep exactly
+	private void checkNumber(InterpreterDataType value) {
+		if (numbers && !isExactNumber(value)) {
+			toObjects();
+		}
+	}
+	
+	// Checks if a value reads back the same after it is stored as a double: the result of arithmetic,
+	// or a string that is a whole number written the usual way, such as the 1 in seen[$1] = 1
+	protected static boolean isExactNumber(InterpreterDataType value) {
+		if (value.isIntegral()) {
+			long integer = value.getInteger();
+			if (integer < -MAX_EXACT || integer > MAX_EXACT) {
+				return false;
+			}
+			return value.isNumeric() || NumberFormatter.formatInteger(integer).equals(value.getValue());
+		}
+		return value.isNumeric();
+	}
+	
+	// Makes every element an object, for an array that is about to hold a string
+	private void toObjects() {
+		dense = new InterpreterDataType[denseNumbers.length];
+		for (int i = 0; i < dense.length; i++) {
+			if (isFilled(i)) {
+				dense[i] = new InterpreterDataType(denseNumbers[i]);
+			}
+		}
+		elements = new HashMap<String, InterpreterDataType>();
+		for (int slot = 0; slot < numberTable.capacity(); slot++) {
+			if (numberTable.keyAt(slot) != null) {
+				elements.put(numberTable.keyAt(slot), new InterpreterDataType(numberTable.valueAt(slot)));
+			}
+		}
+		numbers = false;
+		denseNumbers = NO_NUMBERS;
+		denseFilled = NO_BITS;
+		numberTable = null;
+	}
+	
+	private int denseLength() {
+		return numbers ? denseNumbers.length : dense.length;
+	}
+	
+	private boolean isFilled(int position) {
+		return numbers ? (denseFilled[position >>> 6] & (1L << position)) != 0 : dense[position] != null;
+	}
+	
+	private InterpreterDataType loadDense(int position) {
+		if (numbers) {
+			return isFilled(position) ? new InterpreterDataType(denseNumbers[position]) : null;
+		}
+		return dense[position];
+	}
+	
+	private void storeDense(int position, InterpreterDataType value) {
+		if (numbers) {
+			denseNumbers[position] = value.getNumber();
+			denseFilled[position >>> 6] |= 1L << position;
+		}
+		else {
+			dense[position] = value;
+		}
+	}
+	
+	private void clearDense(int position) {
+		if (numbers) {
+			denseFilled[position >>> 6] &= ~(1L << position);
+		}
+		else {
+			dense[position] = null;
+		}
+	}
+	
+	private InterpreterDataType loadSparse(String key) {
+		if (numbers) {
+			int slot = numberTable.find(key);
+			return slot >= 0 ? new InterpreterDataType(numberTable.valueAt(slot)) : null;
+		}
+		return elements.get(key);
 	}
 	
-	public HashMap<String, InterpreterDataType> getElements() {
-		return elements;
+	private InterpreterDataType removeSparse(String key) {
+		if (numbers) {
+			int slot = numberTable.find(key);
+			if (slot < 0) {
+				return null;
+			}
+			InterpreterDataType removed = new InterpreterDataType(numberTable.valueAt(slot));
+			numberTable.removeAt(slot);
+			return removed;
+		}
+		return elements.remove(key);
 	}
-
+	
+	// Stores an element outside the dense segment, counting keys that may later move into it
+	private void putSparse(String key, int position, InterpreterDataType value) {
+		boolean added = numbers ? numberTable.put(key, value.getNumber()) : elements.put(key, value) == null;
+		if (added && position >= 0) {
+			sparseIntegers++;
+		}
+	}
+	
+	// Stores an element in the dense segment if its key is in range or close enough to grow into.
+	// Returns false if the key would leave the segment mostly empty.
+	private boolean setDense(int position, InterpreterDataType value) {
+		if (position >= denseLength()) {
+			if (position >= Math.max(MIN_DENSE, 2 * (denseCount + 1))) {
+				return false;
+			}
+			promote(position);
+		}
+		if (!isFilled(position)) {
+			denseCount++;
+		}
+		storeDense(position, value);
+		return true;
+	}
+	
+	// Grows the dense segment to hold position, moving in any keys stored outside it for the new slots
+	private void promote(int position) {
+		int length = Math.max(MIN_DENSE, denseLength() * 2);
+		while (length <= position) {
+			length *= 2;
+		}
+		if (numbers) {
+			denseNumbers = Arrays.copyOf(denseNumbers, length);
+			denseFilled = Arrays.copyOf(denseFilled, length / 64 + 1);
+		}
+		else {
+			dense = Arrays.copyOf(dense, length);
+		}
+		if (sparseIntegers > 0) {
+			ArrayList<String> keys = new ArrayList<String>();
+			if (numbers) {
+				numberTable.addKeys(keys);
+			}
+			else {
+				keys.addAll(elements.keySet());
+			}
+			for (String key : keys) {
+				int slot = denseIndex(key);
+				if (slot >= 0 && slot < length) {
+					storeDense(slot, removeSparse(key));
+					denseCount++;
+					sparseIntegers--;
+				}
+			}
+		}
+	}
+	
+	// Moves the elements of a mostly empty dense segment out of it
+	private void demote() {
+		for (int i = 0; i < denseLength(); i++) {
+			if (isFilled(i)) {
+				putSparse(NumberFormatter.formatInteger(i), i, loadDense(i));
+			}
+		}
+		if (numbers) {
+			denseNumbers = NO_NUMBERS;
+			denseFilled = NO_BITS;
+		}
+		else {
+			dense = EMPTY;
+		}
+		denseCount = 0;
+	}
+	
+	// Returns the dense slot for a key written the way AWK writes a whole number, or -1. Other
+	// spellings such as "01" or "1.0" are different strings, so they stay separate keys.
+	private static int denseIndex(String key) {
+		int length = key.length();
+		if (length == 0 || length > MAX_KEY_DIGITS || (key.charAt(0) == '0' && length > 1)) {
+			return -1;
+		}
+		int position = 0;
+		for (int i = 0; i < length; i++) {
+			char c = key.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			position = position * 10 + (c - '0');
+		}
+		return position;
+	}
+	
+	// Returns the dense slot for the value of an index expression, or -1
+	private static int denseIndex(InterpreterDataType index) {
+		if (index.isNumeric()) {
+			if (index.isIntegral() && index.getInteger() >= 0 && index.getInteger() <= MAX_KEY) {
+				return (int) index.getInteger();
+			}
+			return -1;
+		}
+		return denseIndex(index.getValue());
+	}
+	
 }
@@ -1,7 +1,17 @@
-
 public class InterpreterDataType {
 	
-	private String value; // String value of the data type
+	private String value; // String value of the data type, null while only the bytes or the number are known
+	private ByteRecord bytes; // View of undecoded record bytes, reused between values
+	private boolean byteBacked = false; // True when the value still lives in bytes
+	private double number; // Numeric value, valid when hasNumber is set
+	private long integer; // The same value as a long, valid when integral is set
+	private boolean integral = false; // True when the number is a whole number that a long holds exactly
+	private boolean hasNumber = false; // True once number holds the value as a number
+	private boolean numeric = false; // True when number is authoritative and the string is only its formatted form
+	private boolean strnum = false; // True when the string looks like a number, valid when hasNumber is set
+	
+	private static final ThreadLocal<NumberScanner> scanners = ThreadLocal.withInitial(NumberScanner::new); // Reused by every value
+	private static final ThreadLocal<NumberFormatter> conversions = ThreadLocal.withInitial(() -> new NumberFormatter(NumberFormatter.DEFAULT_FORMAT)); // CONVFMT of the interpreter running on each thread
 	
 	// Constructor without initial value supplied
 	public InterpreterDataType() {
@@ -13,15 +23,150 @@ public class InterpreterDataType {
 		this.value = value;
 	}
 	
+	// Constructor for the result of arithmetic; the string is only made if it is asked for
+	public InterpreterDataType(double number) {
+		setNumber(number);
+	}
+	
+	// Constructor for the result of whole-number arithmetic
+	public InterpreterDataType(long integer) {
+		setInteger(integer);
+	}
+	
 	// Get the string value of the data type
 	public String getValue() {
+		if (value == null) {
+			if (byteBacked) {
+				value = bytes.toString(); // Decode only when a Java string is needed
+			}
+			else if (integral) {
+				value = NumberFormatter.formatInteger(integer); // Whole numbers print without a decimal point
+			}
+			else {
+				value = conversions.get().format(number); // Format with CONVFMT only when a string is needed
+			}
+		}
 		return value;
 	}
 	
+	// Makes numbers converted to strings on this thread use an interpreter's CONVFMT
+	public static void useConversion(NumberFormatter conversion) {
+		conversions.set(conversion);
+	}
+	
 	public void setValue(String value) {
 		this.value = value;
+		byteBacked = false;
+		hasNumber = false;
+		numeric = false;
+	}
+	
+	// Returns the value as a number, parsing the string at most once; strings that are not numbers are 0
+	public double getNumber() {
+		if (!hasNumber) {
+			NumberScanner scanner = scanners.get();
+			strnum = scanner.scan(value != null ? value : bytes); // Fields are read straight from the record bytes
+			number = scanner.getNumber();
+			integer = scanner.getInteger();
+			integral = scanner.isIntegral();
+			hasNumber = true;
+		}
+		return number;
+	}
+	
+	// Stores a number; the string form becomes stale and is made again when needed
+	public void setNumber(double number) {
+		this.number = number;
+		integral = NumberScanner.isWhole(number);
+		integer = (long) number;
+		value = null;
+		byteBacked = false;
+		hasNumber = true;
+		numeric = true;
+		strnum = true;
+	}
+	
+	// Stores a whole number, which the arithmetic keeps exact
+	public void setInteger(long integer) {
+		this.integer = integer;
+		number = integer;
+		integral = true;
+		value = null;
+		byteBacked = false;
+		hasNumber = true;
+		numeric = true;
+		strnum = true;
+	}
+	
+	// Checks if the value is a whole number, so arithmetic on it can be done with longs
+	public boolean isIntegral() {
+		getNumber();
+		return integral;
 	}
+	
+	// Returns the value as a long; only exact when isIntegral() is true
+	public long getInteger() {
+		getNumber();
+		return integer;
+	}
+	
+	// Checks if the value is a number or a string that looks like one, so comparisons are numeric
+	public boolean isNumber() {
+		getNumber();
+		return strnum;
+	}
+	
+	// Checks if the number is the authoritative form, as it is for the result of arithmetic
+	public boolean isNumeric() {
+		return numeric;
+	}
+	
+	// Copies another value in whichever forms it already has, without parsing or formatting it
+	public void set(InterpreterDataType other) {
+		if (other.numeric) {
+			if (other.integral) {
+				setInteger(other.integer);
+			}
+			else {
+				setNumber(other.number);
+			}
+			return;
+		}
+		value = other.getValue(); // Bytes are views that are reused, so they are decoded here
+		byteBacked = false;
+		number = other.number;
+		integer = other.integer;
+		integral = other.integral;
+		hasNumber = other.hasNumber;
+		numeric = false;
+		strnum = other.strnum;
+	}
+	
+	// Returns a copy that keeps the value if the original is later reused or changed
+	public InterpreterDataType copy() {
+		InterpreterDataType copy = new InterpreterDataType();
+		copy.set(this);
+		return copy;
+	}
+	
+	// Sets the value to part of an ASCII record without decoding it
+	public void setBytes(ByteRecord record, int start, int end) {
+		if (bytes == null) {
+			bytes = new ByteRecord();
+		}
+		bytes.set(record, start, end);
+		value = null;
+		byteBacked = true;
+		hasNumber = false;
+		numeric = false;
+	}
+	
+	// Returns the undecoded bytes of the value, or null if it is a plain string
+	public ByteRecord getBytes() {
+		return byteBacked ? bytes : null;
+	}
+	
 	public String toString() {
-		return value;
+		return getValue();
 	}
 }
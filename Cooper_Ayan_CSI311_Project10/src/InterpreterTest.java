@@ -1,7 +1,10 @@
 import static org.junit.Assert.*;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -11,7 +14,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import java.util.List;
 import java.util.function.Function;
-
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+	
 public class InterpreterTest {
 	
 	@Test
@@ -38,6 +45,551 @@ public class InterpreterTest {
 		assertEquals(3, lineHandler.getFNR());
 	}
 	
+	@Test
+	public void testMemoryMappedInput() throws Exception {
+		Interpreter interpreter = new Interpreter(new ProgramNode(), Path.of("test.txt"));
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setMemoryMapped(true);
+		
+		assertEquals(true, lineHandler.SplitAndAssign());
+		var record = lineHandler.getField(0);
+		assertEquals("this is a test", record.getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		record = lineHandler.getField(0);
+		assertEquals("use it i guess", record.getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+		lineHandler.close();
+	}
+	
+	@Test
+	public void testMultipleInputs() throws Exception {
+		Interpreter interpreter = new Interpreter(new ProgramNode(), null);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setInputs(List.of("test.txt", "test.txt"));
+		HashMap<String, InterpreterDataType> locals = new HashMap<>();
+		// FILENAME is empty in BEGIN, before any record is read
+		assertEquals("", interpreter.GetIDT(new VariableReferenceNode("FILENAME"), locals).getValue());
+		
+		for (int record = 1; record <= 4; record++) {
+			assertEquals(true, lineHandler.SplitAndAssign());
+			assertEquals(String.valueOf(record), interpreter.GetIDT(new VariableReferenceNode("NR"), locals).getValue());
+			// FNR starts over with the second file
+			assertEquals(String.valueOf((record - 1) % 2 + 1), interpreter.GetIDT(new VariableReferenceNode("FNR"), locals).getValue());
+			assertEquals("test.txt", interpreter.GetIDT(new VariableReferenceNode("FILENAME"), locals).getValue());
+		}
+		assertEquals("use it i guess", lineHandler.getField(0).getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+		lineHandler.close();
+	}
+	
+	@Test
+	public void testCompressedInput() throws Exception {
+		Path compressed = Files.createTempFile("input", ".gz");
+		try (GZIPOutputStream output = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+			output.write("this is a test\nuse it i guess\n".getBytes(StandardCharsets.UTF_8));
+		}
+		
+		Interpreter interpreter = new Interpreter(new ProgramNode(), compressed);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		assertEquals(false, lineHandler.isPartitionable());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("is", lineHandler.getField(2).getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("use it i guess", lineHandler.getField(0).getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+		lineHandler.close();
+		Files.delete(compressed);
+	}
+	
+	@Test
+	public void testPipeInput() throws Exception {
+		// A named pipe can only be read once, so nothing may peek at it before the reader does
+		Path pipe = Files.createTempDirectory("input").resolve("pipe");
+		assertEquals(0, new ProcessBuilder("mkfifo", pipe.toString()).start().waitFor());
+		Thread writer = new Thread(() -> {
+			try {
+				Files.write(pipe, "hello\nworld\n".getBytes(StandardCharsets.UTF_8));
+			}
+			catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		writer.start();
+		
+		Interpreter interpreter = new Interpreter(new ProgramNode(), pipe);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setByteRecords(true);
+		assertEquals(false, lineHandler.isPartitionable());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("hello", lineHandler.getField(0).getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("world", lineHandler.getField(0).getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+		lineHandler.close();
+		writer.join();
+		Files.delete(pipe);
+		Files.delete(pipe.getParent());
+	}
+	
+	@Test
+	public void testRecordSeparators() throws Exception {
+		Interpreter interpreter = new Interpreter(new ProgramNode(), null);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		HashMap<String, InterpreterDataType> locals = new HashMap<>();
+		
+		// Paragraph mode: blank lines separate records and newlines separate fields
+		lineHandler.setLines(List.of("", "Exception in main", "  at a.b(c)", "", "", "ok line"));
+		interpreter.GetIDT(new VariableReferenceNode("RS"), locals).setValue("");
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("Exception in main\n  at a.b(c)", lineHandler.getField(0).getValue());
+		assertEquals(5, lineHandler.getNF());
+		assertEquals("\n\n\n", interpreter.GetIDT(new VariableReferenceNode("RT"), locals).getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("ok line", lineHandler.getField(0).getValue());
+		assertEquals("", interpreter.GetIDT(new VariableReferenceNode("RT"), locals).getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+		
+		// Literal separator
+		lineHandler.setLines(List.of("a<>b<>c"));
+		interpreter.GetIDT(new VariableReferenceNode("RS"), locals).setValue("<>");
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("a", lineHandler.getField(0).getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("c", lineHandler.getField(0).getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+		
+		// Regex separator over a memory-mapped file
+		interpreter = new Interpreter(new ProgramNode(), Path.of("test.txt"));
+		lineHandler = interpreter.getLineHandler();
+		lineHandler.setMemoryMapped(true);
+		interpreter.GetIDT(new VariableReferenceNode("RS"), locals).setValue("[ \n]+");
+		assertEquals(false, lineHandler.isPartitionable());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("this", lineHandler.getField(0).getValue());
+		assertEquals(" ", interpreter.GetIDT(new VariableReferenceNode("RT"), locals).getValue());
+		while (lineHandler.SplitAndAssign()) {
+		}
+		assertEquals(8, lineHandler.getNR());
+		lineHandler.close();
+		
+		// Regex separators running across several reads, resuming where a match may still start
+		String run = "y".repeat(300000);
+		Path input = Files.createTempFile("input", ".txt");
+		Files.writeString(input, "a<" + run + ">b<>" + run + "c");
+		interpreter = new Interpreter(new ProgramNode(), input);
+		lineHandler = interpreter.getLineHandler();
+		lineHandler.setByteRecords(true);
+		interpreter.GetIDT(new VariableReferenceNode("RS"), locals).setValue("<[^>]*>");
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("a", lineHandler.getField(0).getValue());
+		assertEquals("<" + run + ">", interpreter.GetIDT(new VariableReferenceNode("RT"), locals).getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("b", lineHandler.getField(0).getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals(run + "c", lineHandler.getField(0).getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+		lineHandler.close();
+		Files.delete(input);
+	}
+	
+	@Test
+	public void testCarriageReturns() throws Exception {
+		// Only \n ends a record, and a \r right before it is dropped, whichever reader is used. The
+		// long record puts a \r\n across the end of the text reader's buffer.
+		String longRecord = "x".repeat((1 << 16) - 1);
+		Path input = Files.createTempFile("input", ".txt");
+		Files.writeString(input, "a\rb\r\nc\n\n" + longRecord + "\r\nd\r");
+		List<String> expected = List.of("a\rb", "c", "", longRecord, "d");
+		
+		for (int mode = 0; mode < 3; mode++) {
+			Interpreter interpreter = new Interpreter(new ProgramNode(), input);
+			Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+			lineHandler.setByteRecords(mode == 1);
+			lineHandler.setMemoryMapped(mode == 2);
+			for (String record : expected) {
+				assertEquals(true, lineHandler.SplitAndAssign());
+				assertEquals(record, lineHandler.getField(0).getValue());
+			}
+			assertEquals(false, lineHandler.SplitAndAssign());
+			lineHandler.close();
+		}
+		Files.delete(input);
+	}
+	
+	@Test
+	public void testLargeRecords() throws Exception {
+		Interpreter interpreter = new Interpreter(new ProgramNode(), null);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setLargeRecordSize(16);
+		String large = "first second cafe " + "x".repeat(100000) + " last";
+		String accented = "first second caf\u00e9 " + "x".repeat(100000) + " last";
+		lineHandler.setLines(List.of("short", large, accented, "after"));
+		
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("short", lineHandler.getField(0).getValue());
+		assertEquals(true, lineHandler.SplitAndAssign());
+		// The large record stays in bytes
+		assertNotNull(lineHandler.getField(0).getBytes());
+		assertEquals("cafe", lineHandler.getField(3).getValue());
+		assertEquals(5, lineHandler.getNF());
+		HashMap<String, InterpreterDataType> parameters = new HashMap<>();
+		parameters.put("0", lineHandler.getField(0));
+		assertEquals(String.valueOf(large.length()), interpreter.executeFunction("length", parameters));
+		assertEquals(large, lineHandler.getField(0).getValue());
+		
+		// Unless it is not ASCII, when it is decoded so a regex FS splits characters rather than bytes
+		interpreter.GetIDT(new VariableReferenceNode("FS"), new HashMap<>()).setValue("[\u00e9]");
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertNull(lineHandler.getField(0).getBytes());
+		assertEquals("first second caf", lineHandler.getField(1).getValue());
+		parameters.put("0", lineHandler.getField(0));
+		assertEquals(String.valueOf(accented.length()), interpreter.executeFunction("length", parameters));
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertEquals("after", lineHandler.getField(0).getValue());
+		assertEquals(false, lineHandler.SplitAndAssign());
+	}
+	
+	@Test
+	public void testByteRecords() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream originalOut = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		Interpreter interpreter = new Interpreter(new ProgramNode(), Path.of("test.txt"));
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setByteRecords(true);
+		
+		assertEquals(true, lineHandler.SplitAndAssign());
+		InterpreterDataType field = lineHandler.getField(4);
+		assertEquals(4, field.getBytes().length()); // Still undecoded
+		
+		HashMap<String, InterpreterDataType> parameters = new HashMap<>();
+		parameters.put("0", lineHandler.getField(0));
+		assertEquals("14", interpreter.executeFunction("length", parameters));
+		interpreter.executeFunction("print", parameters);
+		interpreter.getOutput().flush();
+		lineHandler.close();
+		
+		System.setOut(originalOut);
+		assertEquals("this is a test", outputStream.toString().trim());
+		assertEquals("test", field.getValue());
+	}
+	
+	@Test
+	public void testUnmodifiedRecordPassthrough() throws Exception {
+		Path input = Files.createTempFile("input", ".txt");
+		Files.write(input, "caf\u00e9 au lait\nna\u00efve\n".getBytes(StandardCharsets.UTF_8));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		
+		Interpreter interpreter = new Interpreter(new ProgramNode(), input);
+		interpreter.setOutput(outputStream);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setByteRecords(true);
+		
+		// Not ASCII, but FS cannot match inside a character, so the record keeps its bytes
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertNotNull(lineHandler.getField(0).getBytes());
+		assertEquals("au", lineHandler.getField(2).getValue());
+		HashMap<String, InterpreterDataType> parameters = new HashMap<>();
+		parameters.put("0", lineHandler.getField(0));
+		assertEquals("12", interpreter.executeFunction("length", parameters));
+		// A bare print copies the record's bytes
+		interpreter.executeFunction("print", new HashMap<>());
+		interpreter.getOutput().flush();
+		assertEquals("caf\u00e9 au lait ", outputStream.toString(StandardCharsets.UTF_8));
+		
+		// A regex FS could split a character, so the record is decoded first
+		interpreter.GetIDT(new VariableReferenceNode("FS"), new HashMap<>()).setValue("[\u00ef]");
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertNull(lineHandler.getField(0).getBytes());
+		assertEquals("ve", lineHandler.getField(2).getValue());
+		lineHandler.close();
+		Files.delete(input);
+	}
+	
+	@Test
+	public void testFieldAssignment() throws Exception {
+		Path input = Files.createTempFile("input", ".txt");
+		Files.write(input, "caf\u00e9 au lait\none two\n".getBytes(StandardCharsets.UTF_8));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		
+		Lexer lexer = new Lexer("NR == 1 { $2 = \"noir\"; print() }\n"
+				+ "NR == 2 { $4 = $1; print(NF); $0 = \"a b c\"; print($3, NF); print() }");
+		lexer.Lex();
+		ProgramNode program = new Parser(lexer.tokens).Parse();
+		Interpreter interpreter = new Interpreter(program, input);
+		interpreter.setOutput(outputStream);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setByteRecords(true);
+		
+		// Assigning a field rebuilds $0 with OFS, so it no longer keeps the bytes it was read as
+		assertEquals(true, lineHandler.SplitAndAssign());
+		assertNotNull(lineHandler.getField(0).getBytes());
+		interpreter.InterpretBlock(program.getOtherBlocks().get(0));
+		assertNull(lineHandler.getField(0).getBytes());
+		assertEquals("noir", lineHandler.getField(2).getValue());
+		
+		// Fields past NF are added empty, and a new $0 is split again
+		assertEquals(true, lineHandler.SplitAndAssign());
+		interpreter.InterpretBlock(program.getOtherBlocks().get(1));
+		assertEquals("b", lineHandler.getField(2).getValue());
+		interpreter.getOutput().flush();
+		assertEquals("caf\u00e9 noir lait 4 c 3 a b c ", outputStream.toString(StandardCharsets.UTF_8));
+		lineHandler.close();
+		Files.delete(input);
+	}
+	
+	@Test
+	public void testInterpretProgramRecordOrder() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		PrintStream originalOut = System.out;
+		System.setOut(new PrintStream(outputStream));
+		
+		ProgramNode program = new ProgramNode();
+		for (String label : new String[] {"A", "B"}) {
+			LinkedList<Node> parameters = new LinkedList<>();
+			parameters.add(new ConstantNode(label));
+			BlockNode block = new BlockNode();
+			block.addStatement(new FunctionCallNode("print", parameters));
+			program.addOtherBlock(block);
+		}
+		
+		Interpreter interpreter = new Interpreter(program, null);
+		interpreter.getLineHandler().setLines(List.of("Line 1", "Line 2"));
+		interpreter.InterpretProgram(program);
+		
+		System.setOut(originalOut);
+		// Every block runs against a record before the next record is read
+		assertEquals("A B A B", outputStream.toString().trim());
+		assertEquals(2, interpreter.getLineHandler().getNR());
+	}
+	
+	@Test
+	public void testParallelRecordIndependentProgram() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		
+		ProgramNode program = new ProgramNode();
+		LinkedList<Node> parameters = new LinkedList<>();
+		parameters.add(new OperationNode(OperationNode.AWKOperation.DOLLAR, Optional.of(new ConstantNode("1"))));
+		BlockNode block = new BlockNode();
+		block.addStatement(new FunctionCallNode("print", parameters));
+		program.addOtherBlock(block);
+		assertEquals(true, new ProgramAnalyzer(program).isRecordIndependent());
+		
+		Interpreter interpreter = new Interpreter(program, Path.of("test.txt"));
+		interpreter.setParallelism(4);
+		interpreter.setOutput(new PrintStream(outputStream));
+		interpreter.InterpretProgram(program);
+		assertEquals("this use", outputStream.toString().trim());
+		assertEquals(2, interpreter.getLineHandler().getNR());
+		
+		// Any assignment in a rule makes the program fall back to sequential execution
+		block.addStatement(new AssignmentNode(new VariableReferenceNode("count"), new ConstantNode("1")));
+		assertEquals(false, new ProgramAnalyzer(program).isRecordIndependent());
+	}
+	
+	@Test
+	public void testParallelMergedUpdates() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		
+		Lexer lexer = new Lexer("{ words[$1] += NF; n++; if ($3 > widest) widest = $3 }\n"
+				+ "END { for (k in words) total += words[k]; print(n, total, words[\"use\"], widest) }");
+		lexer.Lex();
+		ProgramNode program = new Parser(lexer.tokens).Parse();
+		HashMap<String, ProgramAnalyzer.MergeType> merges = new ProgramAnalyzer(program).getMergeableUpdates();
+		assertEquals(ProgramAnalyzer.MergeType.SUM, merges.get("words"));
+		assertEquals(ProgramAnalyzer.MergeType.SUM, merges.get("n"));
+		assertEquals(ProgramAnalyzer.MergeType.MAX, merges.get("widest"));
+		assertEquals(false, new ProgramAnalyzer(program).isRecordIndependent());
+		
+		Interpreter interpreter = new Interpreter(program, Path.of("test.txt"));
+		interpreter.setParallelism(4);
+		interpreter.setOutput(new PrintStream(outputStream));
+		interpreter.InterpretProgram(program);
+		assertEquals("2 8 4 i", outputStream.toString().trim());
+		
+		// Minimums start from the value BEGIN gave them, not from an empty value no record is below
+		outputStream.reset();
+		lexer = new Lexer("BEGIN { fewest = 100; least[\"fields\"] = 100 }\n"
+				+ "{ if (NF < fewest) fewest = NF; if (NF < least[\"fields\"]) least[\"fields\"] = NF }\n"
+				+ "END { print(fewest, least[\"fields\"]) }");
+		lexer.Lex();
+		program = new Parser(lexer.tokens).Parse();
+		assertEquals(ProgramAnalyzer.MergeType.MIN, new ProgramAnalyzer(program).getMergeableUpdates().get("fewest"));
+		interpreter = new Interpreter(program, Path.of("test.txt"));
+		interpreter.setParallelism(4);
+		interpreter.setOutput(new PrintStream(outputStream));
+		interpreter.InterpretProgram(program);
+		assertEquals("4 4", outputStream.toString().trim());
+		
+		// Workers print numbers with the OFMT set in BEGIN
+		outputStream.reset();
+		lexer = new Lexer("BEGIN { OFMT = \"%.2f\" } { print(NF / 3) }");
+		lexer.Lex();
+		program = new Parser(lexer.tokens).Parse();
+		interpreter = new Interpreter(program, Path.of("test.txt"));
+		interpreter.setParallelism(4);
+		interpreter.setOutput(new PrintStream(outputStream));
+		interpreter.InterpretProgram(program);
+		assertEquals("1.33 1.33", outputStream.toString().trim());
+		
+		// Reading a merged variable inside a rule would see a partial value
+		lexer = new Lexer("{ n++; print(n) }");
+		lexer.Lex();
+		assertEquals(null, new ProgramAnalyzer(new Parser(lexer.tokens).Parse()).getMergeableUpdates());
+		
+		// So would an update used as a value instead of as a statement
+		lexer = new Lexer("$2 > 999 { print(n++) }");
+		lexer.Lex();
+		assertEquals(null, new ProgramAnalyzer(new Parser(lexer.tokens).Parse()).getMergeableUpdates());
+		lexer = new Lexer("{ total += (n += 1) }");
+		lexer.Lex();
+		assertEquals(null, new ProgramAnalyzer(new Parser(lexer.tokens).Parse()).getMergeableUpdates());
+	}
+	
+	@Test
+	public void testParallelMatchesSequential() throws Exception {
+		// Enough records for dozens of chunks, with the smallest and largest values in the middle
+		Path input = Files.createTempFile("input", ".txt");
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append("k").append(i % 10).append(' ').append(i == 12345 ? 3 : i == 15000 ? 200000 : 1000 + (i * 7919) % 100003).append('\n');
+		}
+		Files.writeString(input, text);
+		assertEquals(true, Files.size(input) > 40 * 4096);
+		
+		String source = "BEGIN { least = 1000000; low[\"k5\"] = 1000000 }\n"
+				+ "$2 > 100900 { print($1, $2) }\n"
+				+ "{ total += $2; count[$1]++; if ($2 < least) least = $2; if ($2 > most) most = $2\n"
+				+ "  if ($2 < low[$1]) low[$1] = $2; if ($2 > high[$1]) high[$1] = $2 }\n"
+				+ "END { print(NR, total, least, most, count[\"k5\"], low[\"k5\"], high[\"k0\"]) }";
+		String[] outputs = new String[2];
+		for (int run = 0; run < 2; run++) {
+			Lexer lexer = new Lexer(source);
+			lexer.Lex();
+			ProgramNode program = new Parser(lexer.tokens).Parse();
+			assertNotNull(new ProgramAnalyzer(program).getMergeableUpdates());
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			Interpreter interpreter = new Interpreter(program, input);
+			interpreter.setParallelism(run == 0 ? 1 : 4);
+			interpreter.setChunkSize(4096);
+			interpreter.setOutput(new PrintStream(outputStream));
+			interpreter.InterpretProgram(program);
+			outputs[run] = outputStream.toString();
+		}
+		Files.delete(input);
+		
+		assertEquals(outputs[0], outputs[1]);
+		assertEquals(true, outputs[1].startsWith("k"));
+		assertEquals(true, outputs[1].contains("k0 200000 "));
+		assertEquals(true, outputs[1].endsWith("20000 " + total(text) + " 3 200000 2000 3 200000 "));
+	}
+	
+	// Adds up the second column of the generated input
+	private static long total(StringBuilder text) {
+		long total = 0;
+		for (String line : text.toString().split("\n")) {
+			total += Long.parseLong(line.substring(line.indexOf(' ') + 1));
+		}
+		return total;
+	}
+	
+	@Test
+	public void testOutputSinkFlushModes() throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		OutputSink sink = new OutputSink(outputStream);
+		sink.print("caf\u00e9 ");
+		sink.endRecord();
+		assertEquals(0, outputStream.size()); // Held until the buffer fills or the program ends
+		sink.flush();
+		assertEquals("caf\u00e9 ", outputStream.toString(StandardCharsets.UTF_8));
+		
+		sink.setMode(OutputSink.FlushMode.LATENCY);
+		sink.print("a-b");
+		sink.endRecord();
+		assertEquals("caf\u00e9 a-b", outputStream.toString(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testOutputRedirection() throws Exception {
+		Path first = Files.createTempFile("first", ".txt");
+		Path second = Files.createTempFile("second", ".txt");
+		Lexer lexer = new Lexer("{ print($1) > \"" + first + "\"; print($2) >> \"" + second + "\" }");
+		lexer.Lex();
+		ProgramNode program = new Parser(lexer.tokens).Parse();
+		assertEquals(false, new ProgramAnalyzer(program).isRecordIndependent());
+		
+		// With room for one open file, every print closes the other file and reopens its own
+		Interpreter interpreter = new Interpreter(program, null);
+		interpreter.getRedirections().setMaxOpen(1);
+		interpreter.getLineHandler().setLines(List.of("a b", "c d"));
+		interpreter.InterpretProgram(program);
+		assertEquals("a c ", Files.readString(first));
+		assertEquals("b d ", Files.readString(second));
+		assertEquals(0, interpreter.getRedirections().getOpenCount());
+		
+		// After close(), > starts the file over
+		RedirectionCache redirections = new RedirectionCache();
+		redirections.get(first.toString(), RedirectionCache.Kind.WRITE).print("x");
+		assertEquals(0, redirections.close(first.toString()));
+		assertEquals(-1, redirections.close(first.toString()));
+		assertEquals("x", Files.readString(first));
+		Files.delete(first);
+		Files.delete(second);
+	}
+	
+	@Test
+	public void testCompressedOutput() throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputSink sink = new OutputSink(new CompressingOutputStream(compressed));
+		StringBuilder expected = new StringBuilder();
+		// Several blocks, so the output is several gzip members compressed on different threads
+		for (int i = 0; i < 100000; i++) {
+			sink.print("record " + i + "\n");
+			expected.append("record ").append(i).append('\n');
+		}
+		sink.close();
+		
+		byte[] inflated = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes();
+		assertEquals(expected.toString(), new String(inflated, StandardCharsets.UTF_8));
+		
+		// Flushing after every record leaves blocks open, so members are still one per full block
+		compressed.reset();
+		sink = new OutputSink(new CompressingOutputStream(compressed), OutputSink.FlushMode.LATENCY);
+		for (int i = 0; i < 100000; i++) {
+			sink.print("record " + i + "\n");
+			sink.endRecord();
+		}
+		sink.close();
+		inflated = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes();
+		assertEquals(expected.toString(), new String(inflated, StandardCharsets.UTF_8));
+		assertEquals(true, countMembers(compressed.toByteArray()) <= expected.length() / (1 << 17) + 1);
+		
+		// No output is still a valid gzip file
+		compressed.reset();
+		new CompressingOutputStream(compressed).close();
+		assertEquals(0, new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes().length);
+	}
+	
+	// Counts the gzip members in compressed output by inflating each one to find where the next starts
+	private static int countMembers(byte[] gzip) throws DataFormatException {
+		int members = 0;
+		int position = 0;
+		while (position < gzip.length) {
+			Inflater inflater = new Inflater(true);
+			inflater.setInput(gzip, position + 10, gzip.length - position - 10); // Skip the member header
+			byte[] buffer = new byte[1 << 16];
+			while (!inflater.finished()) {
+				inflater.inflate(buffer);
+			}
+			position = gzip.length - inflater.getRemaining() + 8; // Skip the CRC and length trailer
+			inflater.end();
+			members++;
+		}
+		return members;
+	}
+	
 	@Test
 	public void testPrint() throws IOException {
 		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -50,6 +602,7 @@ public class InterpreterTest {
 		parameters.put("0", new InterpreterDataType("Hello, World!"));
 		parameters.put("1", new InterpreterDataType("I'm being printed!"));
 		String result = interpreter.executeFunction("print", parameters);
+		interpreter.getOutput().flush();
 		
 		System.setOut(originalOut);
 		String printedContent = outputStream.toString();
@@ -69,6 +622,7 @@ public class InterpreterTest {
 		parameters.put("0", new InterpreterDataType("Hello 42"));
 		
 		String result = interpreter.executeFunction("printf", parameters);
+		interpreter.getOutput().flush();
 		
 		System.setOut(originalOut);
 		String printedContent = outputStream.toString();
@@ -87,6 +641,34 @@ public class InterpreterTest {
 		assertEquals(expectedOutput, result);
 	}
 	
+	@Test
+	public void testPrintfConversions() throws IOException {
+		Interpreter interpreter = new Interpreter(new ProgramNode(), null);
+		HashMap<String, InterpreterDataType> parameters = new HashMap<>();
+		parameters.put("0", new InterpreterDataType("%d|%5.1f|%-4s|%05d|%x|%c|%e|%g|%g|%*d|%%"));
+		String[] arguments = {"42abc", "2.25", "ab", "-7", "255", "65", "12345.678", "100000", "0.0001234", "3", "1"};
+		for (int i = 0; i < arguments.length; i++) {
+			parameters.put(String.valueOf(i + 1), new InterpreterDataType(arguments[i]));
+		}
+		// Strings are converted with AWK's rules, so "42abc" is 42 rather than an error
+		assertEquals("42|  2.2|ab  |-0007|ff|A|1.234568e+04|100000|0.0001234|  1|%",
+				interpreter.executeFunction("sprintf", parameters));
+		
+		// # keeps the decimal point of %g, even when rounding leaves nothing after it
+		parameters.clear();
+		parameters.put("0", new InterpreterDataType("%#g|%#.3g|%#.0g|%#.2g|%#g|%#.2g|%#g"));
+		arguments = new String[] {"913245.7", "999.6", "3", "95.2", "100000", "94.5", "0.5"};
+		for (int i = 0; i < arguments.length; i++) {
+			parameters.put(String.valueOf(i + 1), new InterpreterDataType(arguments[i]));
+		}
+		assertEquals("913246.|1.00e+03|3.|95.|100000.|94.|0.500000", interpreter.executeFunction("sprintf", parameters));
+		
+		// Missing arguments are empty, and unknown conversions are printed as written
+		parameters.clear();
+		parameters.put("0", new InterpreterDataType("%s-%d-%q"));
+		assertEquals("-0-%q", interpreter.executeFunction("sprintf", parameters));
+	}
+	
 	@Test
 	public void testGetline() throws IOException {
 		Path filePath = Path.of("test.txt");
@@ -187,6 +769,124 @@ public class InterpreterTest {
 		assertEquals(expectedOutput, result);
 	}
 	
+	@Test
+	public void testSplitSeparators() throws IOException {
+		Interpreter interpreter = new Interpreter(new ProgramNode(), null);
+		String[][] cases = {
+				{"a|b|c", "|", "3"}, // Single character, used literally
+				{"a::b::::c", "::", "4"}, // Literal multi-character separator
+				{"a,b;c", "[,;]", "3"}, // Regex separator
+				{"  a \t b  ", " ", "2"}, // Default blank splitting
+				{"", ",", "0"}
+		};
+		for (String[] testCase : cases) {
+			HashMap<String, InterpreterDataType> parameters = new HashMap<>();
+			InterpreterArrayDataType array = new InterpreterArrayDataType(new HashMap<>());
+			parameters.put("0", new InterpreterDataType(testCase[0]));
+			parameters.put("1", array);
+			parameters.put("2", new InterpreterDataType(testCase[1]));
+			assertEquals(testCase[2], interpreter.executeFunction("split", parameters));
+		}
+	}
+	
+	@Test
+	public void testArrayKeys() {
+		InterpreterArrayDataType array = new InterpreterArrayDataType();
+		array.setArrayElements(new InterpreterDataType(1L), new InterpreterDataType("one"));
+		// The same element whether the key is a number, a string or the result of arithmetic
+		assertEquals("one", array.getArrayElement("1").getValue());
+		assertEquals("one", array.getArrayElement(new InterpreterDataType(2.0 / 2)).getValue());
+		// Other spellings of the number are different keys
+		assertNull(array.getArrayElement("01"));
+		assertNull(array.getArrayElement("1.0"));
+		array.setArrayElements("01", new InterpreterDataType("zero one"));
+		array.setArrayElements("-1", new InterpreterDataType("minus one"));
+		assertEquals("minus one", array.getArrayElement(new InterpreterDataType(-1L)).getValue());
+	
+		// A key far past the others is kept in the map until the keys before it fill in
+		array.setArrayElements("100", new InterpreterDataType("hundred"));
+		for (int i = 2; i < 100; i++) {
+			array.setArrayElements(new InterpreterDataType((long) i), new InterpreterDataType(i));
+		}
+		assertEquals("hundred", array.getArrayElement(new InterpreterDataType(100L)).getValue());
+		assertEquals("50", array.getArrayElement("50").getValue());
+		assertEquals(102, array.size());
+		assertEquals("1", array.getKeys().get(0));
+	
+		// Removing most of the keys moves the rest back to the map
+		for (int i = 1; i < 100; i++) {
+			array.removeArrayElement(String.valueOf(i));
+		}
+		assertEquals(3, array.size());
+		assertEquals("hundred", array.getArrayElement("100").getValue());
+		assertNull(array.getArrayElement("5"));
+		array.clear();
+		assertEquals(0, array.getKeys().size());
+	}
+	
+	@Test
+	public void testNumericArrays() {
+		InterpreterArrayDataType array = new InterpreterArrayDataType();
+		for (int i = 0; i < 1000; i++) {
+			array.setArrayElements("key" + i, new InterpreterDataType(i * 0.5));
+			array.setArrayElements(new InterpreterDataType((long) i), new InterpreterDataType((long) i));
+		}
+		array.setArrayElements("seen", new InterpreterDataType("1"));
+		for (int i = 0; i < 1000; i += 2) {
+			array.removeArrayElement("key" + i);
+		}
+		// Numbers and whole-number strings are kept as doubles and read back the same
+		assertEquals(true, array.holdsNumbers());
+		assertEquals(1501, array.size());
+		assertEquals("499.5", array.getArrayElement("key999").getValue());
+		assertNull(array.getArrayElement("key998"));
+		assertEquals("999", array.getArrayElement("999").getValue());
+		assertEquals("1", array.getArrayElement("seen").getValue());
+	
+		// The first string moves every element to objects
+		array.setArrayElements("name", new InterpreterDataType("01"));
+		assertEquals(false, array.holdsNumbers());
+		assertEquals(1502, array.size());
+		assertEquals("01", array.getArrayElement("name").getValue());
+		assertEquals("0.5", array.getArrayElement("key1").getValue());
+		assertEquals("42", array.getArrayElement("42").getValue());
+	}
+	
+	@Test
+	public void testOffHeapArrays() {
+		InterpreterArrayDataType array = new OffHeapArrayDataType();
+		for (int i = 0; i < 5000; i++) {
+			array.setArrayElements("key" + i, new InterpreterDataType(i + 0.5));
+		}
+		array.setArrayElements(new InterpreterDataType(7L), new InterpreterDataType("caf\u00e9"));
+		assertEquals(5001, array.size());
+		assertEquals("4999.5", array.getArrayElement("key4999").getValue());
+		assertEquals("caf\u00e9", array.getArrayElement("7").getValue());
+		assertNull(array.getArrayElement("key5000"));
+	
+		// Updates keep the key, whether the value fits where it was or not
+		array.setArrayElements("7", new InterpreterDataType("longer text"));
+		array.setArrayElements("key1", new InterpreterDataType("one"));
+		array.setArrayElements("key2", new InterpreterDataType(2L));
+		assertEquals("longer text", array.getArrayElement(new InterpreterDataType(14.0 / 2)).getValue());
+		assertEquals("one", array.getArrayElement("key1").getValue());
+		assertEquals("2", array.getArrayElement("key2").getValue());
+		assertEquals(5001, array.size());
+	
+		// Removing keys leaves the rest reachable
+		for (int i = 0; i < 5000; i += 3) {
+			assertNotNull(array.removeArrayElement("key" + i));
+		}
+		assertNull(array.removeArrayElement("key0"));
+		for (int i = 1; i < 5000; i += 3) {
+			assertNotNull(array.getArrayElement("key" + i));
+		}
+		assertEquals(array.size(), array.getKeys().size());
+		array.clear();
+		assertEquals(0, array.size());
+		assertNull(array.getArrayElement("key1"));
+	}
+	
 	@Test
 	public void testSubstr() throws IOException {
 		Path filePath = Path.of("test.txt");
@@ -306,32 +1006,114 @@ public class InterpreterTest {
 		var operationNode1 = new OperationNode(constantNode1, OperationNode.AWKOperation.ADD, 
 				Optional.of(constantNode2));
 		var addIDT = interpreter.GetIDT(operationNode1, null);
-		Assert.assertEquals("12.0", addIDT.getValue());
+		Assert.assertEquals("12", addIDT.getValue());
 		
 		var operationNode2 = new OperationNode(constantNode1, OperationNode.AWKOperation.SUBTRACT, 
 				Optional.of(constantNode2));
 		var subtractIDT = interpreter.GetIDT(operationNode2, null);
-		Assert.assertEquals("4.0", subtractIDT.getValue());
+		Assert.assertEquals("4", subtractIDT.getValue());
 		
 		var operationNode3 = new OperationNode(constantNode1, OperationNode.AWKOperation.MULTIPLY, 
 				Optional.of(constantNode2));
 		var multiplyIDT = interpreter.GetIDT(operationNode3, null);
-		Assert.assertEquals("32.0", multiplyIDT.getValue());
+		Assert.assertEquals("32", multiplyIDT.getValue());
 		
 		var operationNode4 = new OperationNode(constantNode1, OperationNode.AWKOperation.DIVIDE, 
 				Optional.of(constantNode2));
 		var divideIDT = interpreter.GetIDT(operationNode4, null);
-		Assert.assertEquals("2.0", divideIDT.getValue());
+		Assert.assertEquals("2", divideIDT.getValue());
 		
 		var operationNode5 = new OperationNode(constantNode1, OperationNode.AWKOperation.EXPONENT, 
 				Optional.of(constantNode2));
 		var exponentIDT = interpreter.GetIDT(operationNode5, null);
-		Assert.assertEquals("4096.0", exponentIDT.getValue());
+		Assert.assertEquals("4096", exponentIDT.getValue());
 		
 		var operationNode6 = new OperationNode(constantNode1, OperationNode.AWKOperation.MODULO, 
 				Optional.of(constantNode2));
 		var moduloIDT = interpreter.GetIDT(operationNode6, null);
-		Assert.assertEquals("0.0", moduloIDT.getValue());
+		Assert.assertEquals("0", moduloIDT.getValue());
+	}
+	
+	@Test
+	public void testNumberScanner() {
+		NumberScanner scanner = new NumberScanner();
+		assertEquals(true, scanner.scan(" 42 "));
+		assertEquals(true, scanner.isIntegral());
+		assertEquals(42, scanner.getInteger());
+		assertEquals(true, scanner.scan("-1.25e2"));
+		assertEquals(-125.0, scanner.getNumber(), 0);
+		assertEquals(true, scanner.scan("0.1"));
+		assertEquals(0.1, scanner.getNumber(), 0);
+		assertEquals(true, scanner.scan("123456789012345678901234567890"));
+		assertEquals(1.2345678901234568e29, scanner.getNumber(), 0);
+		
+		// Text after the number makes it a string, but the numeric prefix is still its value
+		assertEquals(false, scanner.scan("3abc"));
+		assertEquals(3.0, scanner.getNumber(), 0);
+		assertEquals(false, scanner.scan("1e"));
+		assertEquals(1.0, scanner.getNumber(), 0);
+		assertEquals(false, scanner.scan("abc"));
+		assertEquals(0.0, scanner.getNumber(), 0);
+		assertEquals(false, scanner.scan(""));
+		assertEquals(false, scanner.scan("."));
+	}
+	
+	@Test
+	public void testNumberFormatter() throws Exception {
+		NumberFormatter formatter = new NumberFormatter(NumberFormatter.DEFAULT_FORMAT);
+		assertEquals("0.3", formatter.format(0.1 + 0.2));
+		assertEquals("0.333333", formatter.format(1.0 / 3));
+		assertEquals("-2.5", formatter.format(-2.5));
+		assertEquals("1.23457e+08", formatter.format(123456789.5));
+		assertEquals("1.234e-05", formatter.format(0.00001234));
+		assertEquals("1e+06", formatter.format(999999.5));
+		// Whole numbers ignore the format
+		assertEquals("1500000", formatter.format(1500000.0));
+		assertEquals("-7", formatter.format(-7.0));
+		assertEquals("9007199254740992", formatter.format(0x1p53 + 1));
+		assertEquals("-1000000000000000000", formatter.format(-1e18));
+		// Past the range of a long the format applies again
+		assertEquals("1e+19", formatter.format(1e19));
+		// A cached value is formatted the same way the second time
+		assertEquals("0.333333", formatter.format(1.0 / 3));
+		assertEquals("0.33", new NumberFormatter("%.2f").format(1.0 / 3));
+	
+		// CONVFMT is used when a number becomes a string, and only on the thread it was given to
+		InterpreterDataType.useConversion(new NumberFormatter("%.3g"));
+		try {
+			assertEquals("0.333", new InterpreterDataType(1.0 / 3).getValue());
+			assertEquals("12", new InterpreterDataType(12.0).getValue());
+			String[] other = new String[1];
+			Thread thread = new Thread(() -> other[0] = new InterpreterDataType(1.0 / 3).getValue());
+			thread.start();
+			thread.join();
+			assertEquals("0.333333", other[0]);
+		}
+		finally {
+			InterpreterDataType.useConversion(new NumberFormatter(NumberFormatter.DEFAULT_FORMAT));
+		}
+	}
+	
+	@Test
+	public void testWholeNumberArithmetic() throws Exception {
+		var interpreter = new Interpreter(new ProgramNode(), null);
+		// Counters stay exact past 2^24, where float arithmetic stopped counting
+		var increment = new OperationNode(OperationNode.AWKOperation.PREINC, Optional.of(new ConstantNode("16777216")));
+		assertEquals("16777217", interpreter.GetIDT(increment, null).getValue());
+		var sum = new OperationNode(new ConstantNode("9007199254740993"), OperationNode.AWKOperation.ADD, Optional.of(new ConstantNode("1")));
+		assertEquals("9007199254740994", interpreter.GetIDT(sum, null).getValue());
+		
+		// Division only stays whole when it is exact
+		var divide = new OperationNode(new ConstantNode("7"), OperationNode.AWKOperation.DIVIDE, Optional.of(new ConstantNode("2")));
+		InterpreterDataType quotient = interpreter.GetIDT(divide, null);
+		assertEquals(false, quotient.isIntegral());
+		assertEquals("3.5", quotient.getValue());
+		
+		// A double result that is whole goes back to the long path
+		var multiply = new OperationNode(new ConstantNode("2.5"), OperationNode.AWKOperation.MULTIPLY, Optional.of(new ConstantNode("4")));
+		InterpreterDataType product = interpreter.GetIDT(multiply, null);
+		assertEquals(true, product.isIntegral());
+		assertEquals("10", product.getValue());
 	}
 	
 	@Test
@@ -419,9 +1201,35 @@ public class InterpreterTest {
 	public void testDollar() throws Exception {
 		var interpreter = new Interpreter(new ProgramNode(), null);
 		var map = new HashMap<String, InterpreterDataType>();
-		var operationNode = new OperationNode(new ConstantNode("variable"), OperationNode.AWKOperation.DOLLAR);
+		interpreter.getLineHandler().setLines(List.of("alpha  beta gamma"));
+		interpreter.getLineHandler().SplitAndAssign();
+		var operationNode = new OperationNode(new ConstantNode("2"), OperationNode.AWKOperation.DOLLAR);
 		var IDT = interpreter.GetIDT(operationNode, null);
-		Assert.assertEquals("$variable", IDT.getValue());
+		Assert.assertEquals("beta", IDT.getValue());
+		
+		// Parsed $ expressions keep the field index on the right
+		var parsedNode = new OperationNode(OperationNode.AWKOperation.DOLLAR, Optional.of(new ConstantNode("0")));
+		Assert.assertEquals("alpha  beta gamma", interpreter.GetIDT(parsedNode, null).getValue());
+		
+		var pastEnd = new OperationNode(new ConstantNode("7"), OperationNode.AWKOperation.DOLLAR);
+		Assert.assertEquals("", interpreter.GetIDT(pastEnd, null).getValue());
+	}
+	
+	@Test
+	public void testLazyFieldSplitting() throws Exception {
+		var interpreter = new Interpreter(new ProgramNode(), null);
+		Interpreter.LineHandler lineHandler = interpreter.getLineHandler();
+		lineHandler.setLines(List.of("a:b:c:d", "", "e"));
+		lineHandler.SplitAndAssign();
+		
+		interpreter.GetIDT(new VariableReferenceNode("FS"), new HashMap<>()).setValue(":");
+		Assert.assertEquals("b", lineHandler.getField(2).getValue());
+		Assert.assertEquals(4, lineHandler.getNF());
+		Assert.assertEquals("d", lineHandler.getField(4).getValue());
+		
+		// A blank line is still a record, just one without fields
+		Assert.assertEquals(true, lineHandler.SplitAndAssign());
+		Assert.assertEquals(0, lineHandler.getNF());
 	}
 	
 	@Test
@@ -431,27 +1239,58 @@ public class InterpreterTest {
 		
 		var operationNode1 = new OperationNode(OperationNode.AWKOperation.PREINC, Optional.of(new ConstantNode("10")));
 		var preincIDT = interpreter.GetIDT(operationNode1, null);
-		Assert.assertEquals("11.0", preincIDT.getValue());
+		Assert.assertEquals("11", preincIDT.getValue());
 		
 		var operationNode2 = new OperationNode(new ConstantNode("10"), OperationNode.AWKOperation.POSTINC);
 		var postincIDT = interpreter.GetIDT(operationNode2, null);
-		Assert.assertEquals("11.0", postincIDT.getValue());
+		Assert.assertEquals("11", postincIDT.getValue());
 		
 		var operationNode3 = new OperationNode(OperationNode.AWKOperation.PREDEC, Optional.of(new ConstantNode("10")));
 		var predecIDT = interpreter.GetIDT(operationNode3, null);
-		Assert.assertEquals("9.0", predecIDT.getValue());
+		Assert.assertEquals("9", predecIDT.getValue());
 		
 		var operationNode4 = new OperationNode(new ConstantNode("10"), OperationNode.AWKOperation.POSTDEC);
 		var postdecIDT = interpreter.GetIDT(operationNode4, null);
-		Assert.assertEquals("9.0", postdecIDT.getValue());
+		Assert.assertEquals("9", postdecIDT.getValue());
 		
 		var operationNode5 = new OperationNode(OperationNode.AWKOperation.UNARYPOS, Optional.of(new ConstantNode("10")));
 		var uposIDT = interpreter.GetIDT(operationNode5, null);
-		Assert.assertEquals("10.0", uposIDT.getValue());
+		Assert.assertEquals("10", uposIDT.getValue());
 		
 		var operationNode6 = new OperationNode(OperationNode.AWKOperation.UNARYNEG, Optional.of(new ConstantNode("10")));
 		var unegIDT = interpreter.GetIDT(operationNode6, null);
-		Assert.assertEquals("-10.0", unegIDT.getValue());
+		Assert.assertEquals("-10", unegIDT.getValue());
+	}
+	
+	@Test
+	public void testNumberAndStringForms() throws Exception {
+		// Arithmetic results are kept as numbers until a string is asked for
+		InterpreterDataType sum = new InterpreterDataType(12.0);
+		assertEquals(true, sum.isNumeric());
+		assertEquals(12.0, sum.getNumber(), 0);
+		assertEquals("12", sum.getValue());
+		
+		// Strings are parsed once, and only count as numbers in comparisons if they look like one
+		InterpreterDataType field = new InterpreterDataType("3.5");
+		assertEquals(false, field.isNumeric());
+		assertEquals(true, field.isNumber());
+		assertEquals(3.5, field.getNumber(), 0);
+		InterpreterDataType word = new InterpreterDataType("abc");
+		assertEquals(false, word.isNumber());
+		assertEquals(0, word.getNumber(), 0);
+		
+		// Copies keep whichever form is authoritative, and setValue drops the stale number
+		InterpreterDataType copy = sum.copy();
+		assertEquals(true, copy.isNumeric());
+		copy.setValue("7");
+		assertEquals(false, copy.isNumeric());
+		assertEquals(7.0, copy.getNumber(), 0);
+		
+		var interpreter = new Interpreter(new ProgramNode(), null);
+		var lessThan = new OperationNode(new ConstantNode("10"), OperationNode.AWKOperation.LT, Optional.of(new ConstantNode("9")));
+		assertEquals("0", interpreter.GetIDT(lessThan, null).getValue());
+		var stringLessThan = new OperationNode(new ConstantNode("10"), OperationNode.AWKOperation.LT, Optional.of(new ConstantNode("9x")));
+		assertEquals("1", interpreter.GetIDT(stringLessThan, null).getValue());
 	}
 	
 	@Test
@@ -478,5 +1317,5 @@ public class InterpreterTest {
 		var IDT = interpreter.GetIDT(operationNode, map);
 		Assert.assertEquals("1", IDT.getValue());
 	}
-
+	
 }
@@ -1,28 +1,194 @@
-import java.io.IOException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Scanner;
 
 public class Main {
-	
+
+	private static final String USAGE = "usage: Main [-F fs] [-v var=value] [-W interactive|gzip|offheap|parallel[=threads]|mmap|largerecord=bytes|maxopen=files] [-f progfile | 'prog'] [file ...]";
+
 	public static void main(String[] args) throws Exception {
-		Scanner keyboard = new Scanner(System.in);
-		System.out.println("Enter the AWK txt file: ");
-		Path path = Paths.get(keyboard.nextLine()); // Read the user's input as a file path
-		String doc = new String(Files.readAllBytes(path)); // Read the content of the specified file
-		
-		System.out.println("Enter the text file: ");
-		String textFile = keyboard.nextLine();
-		
-		Lexer lexer = new Lexer(doc);
+		if (args.length == 0) {
+			// No arguments, so ask for the program and input like before
+			Scanner keyboard = new Scanner(System.in);
+			System.out.println("Enter the AWK txt file: ");
+			Path path = Paths.get(keyboard.nextLine()); // Read the user's input as a file path
+			String doc = new String(Files.readAllBytes(path)); // Read the content of the specified file
+
+			System.out.println("Enter the text file: ");
+			String textFile = keyboard.nextLine();
+
+			ProgramNode program = parseProgram(doc);
+			//System.out.println(program);
+			Interpreter interpret = new Interpreter(program, Paths.get(textFile));
+			interpret.InterpretProgram(program);
+			return;
+		}
+
+		StringBuilder source = new StringBuilder(); // Program text from every -f file
+		boolean sourceGiven = false;
+		String fieldSeparator = null;
+		LinkedHashMap<String, String> assignments = new LinkedHashMap<String, String>(); // -v variables in order
+		List<String> inputs = new ArrayList<String>();
+		// Output to a terminal is flushed per record; -W interactive does the same for pipes
+		OutputSink.FlushMode flushMode = OutputSink.standardOutputMode();
+		boolean compressOutput = false; // -W gzip
+		boolean offHeapArrays = false; // -W offheap
+		int parallelism = 1; // -W parallel
+		boolean memoryMapped = false; // -W mmap
+		int largeRecordSize = 0; // -W largerecord
+		int maxOpen = RedirectionCache.DEFAULT_MAX_OPEN; // -W maxopen
+
+		// Options come first and end at "--" or the first operand
+		int i = 0;
+		while (i < args.length && args[i].startsWith("-") && !args[i].equals("-")) {
+			String option = args[i++];
+			if (option.equals("--")) {
+				break;
+			}
+			if (option.equals("-f") || option.equals("-F") || option.equals("-v") || option.equals("-W")) {
+				if (i == args.length) {
+					usage("option " + option + " requires an argument");
+				}
+				String argument = args[i++];
+				if (option.equals("-f")) {
+					source.append(new String(Files.readAllBytes(Paths.get(argument)))).append('\n');
+					sourceGiven = true;
+				}
+				else if (option.equals("-F")) {
+					fieldSeparator = argument;
+				}
+				else if (option.equals("-W")) {
+					if (argument.equals("interactive")) {
+						flushMode = OutputSink.FlushMode.LATENCY;
+					}
+					else if (argument.equals("gzip")) {
+						compressOutput = true;
+					}
+					else if (argument.equals("offheap")) {
+						// Arrays live in direct buffers; raise -XX:MaxDirectMemorySize for very large ones
+						offHeapArrays = true;
+					}
+					else if (argument.equals("parallel")) {
+						parallelism = Runtime.getRuntime().availableProcessors();
+					}
+					else if (argument.startsWith("parallel=")) {
+						parallelism = optionNumber(argument);
+					}
+					else if (argument.equals("mmap")) {
+						memoryMapped = true;
+					}
+					else if (argument.startsWith("largerecord=")) {
+						// Records longer than this are spilled to a temporary file instead of growing the heap
+						largeRecordSize = optionNumber(argument);
+					}
+					else if (argument.startsWith("maxopen=")) {
+						// Redirected files kept open at once; the least recently used is closed to open another
+						maxOpen = optionNumber(argument);
+					}
+					else {
+						usage("unknown -W option " + argument);
+					}
+				}
+				else {
+					addAssignment(assignments, argument);
+				}
+			}
+			else if (option.startsWith("-F")) {
+				fieldSeparator = option.substring(2); // -F: form
+			}
+			else if (option.startsWith("-v")) {
+				addAssignment(assignments, option.substring(2)); // -vname=value form
+			}
+			else {
+				usage("unknown option " + option);
+			}
+		}
+
+		// Without -f, the first operand is the program itself
+		if (!sourceGiven) {
+			if (i == args.length) {
+				usage("no program given");
+			}
+			source.append(args[i++]);
+		}
+		while (i < args.length) {
+			inputs.add(args[i++]);
+		}
+		if (inputs.isEmpty()) {
+			inputs.add("-"); // Read standard input when no files are named
+		}
+
+		ProgramNode program = parseProgram(source.toString());
+		Interpreter interpret = new Interpreter(program, null);
+		if (fieldSeparator != null) {
+			// A lone "t" means tab, as in other awks
+			interpret.setVariable("FS", fieldSeparator.equals("t") ? "\t" : fieldSeparator);
+		}
+		for (String name : assignments.keySet()) {
+			interpret.setVariable(name, assignments.get(name));
+		}
+		interpret.setOffHeapArrays(offHeapArrays);
+		interpret.getRedirections().setMaxOpen(maxOpen);
+		// Only used when the input is one plain file and the rules keep no state the workers cannot merge
+		interpret.setParallelism(parallelism);
+		interpret.getLineHandler().setMemoryMapped(memoryMapped); // Files are mapped, standard input is still streamed
+		interpret.getLineHandler().setLargeRecordSize(largeRecordSize);
+		interpret.getLineHandler().setInputs(inputs);
+		interpret.getLineHandler().setByteRecords(true); // Records that are printed unchanged are never decoded
+
+		// Write straight to the file descriptor; the sink does the buffering
+		OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+		if (compressOutput) {
+			stdout = new CompressingOutputStream(stdout); // Compressed on other threads as the program runs
+		}
+		interpret.setOutput(new OutputSink(stdout, flushMode));
+		interpret.InterpretProgram(program);
+		interpret.getOutput().close(); // Writes the last compressed block
+	}
+
+	// Lexes and parses the program text
+	private static ProgramNode parseProgram(String source) throws Exception {
+		Lexer lexer = new Lexer(source);
 		lexer.Lex();
 		Parser parse = new Parser(lexer.tokens);
-		ProgramNode program = parse.Parse();
-		//System.out.println(program);
-		Interpreter interpret = new Interpreter(program, Paths.get(textFile));
-		interpret.InterpretProgram(program);
-		
+		return parse.Parse();
+	}
+
+	// Splits a -v argument into its variable name and value
+	private static void addAssignment(HashMap<String, String> assignments, String argument) {
+		int equals = argument.indexOf('=');
+		if (equals <= 0) {
+			usage("expected var=value after -v, got " + argument);
+		}
+		assignments.put(argument.substring(0, equals), argument.substring(equals + 1));
+	}
+
+	// Reads the positive number after the "=" of a -W option
+	private static int optionNumber(String argument) {
+		try {
+			int number = Integer.parseInt(argument.substring(argument.indexOf('=') + 1));
+			if (number > 0) {
+				return number;
+			}
+		}
+		catch (NumberFormatException e) {
+		}
+		usage("expected a positive number in -W " + argument);
+		return 0;
+	}
+
+	// Reports a bad command line and exits
+	private static void usage(String message) {
+		System.err.println("Main: " + message);
+		System.err.println(USAGE);
+		System.exit(2);
 	}
 }
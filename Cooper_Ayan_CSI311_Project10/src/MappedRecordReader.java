@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedRecordReader implements RecordReader {
+	
+	private static final int WINDOW_SIZE = 1 << 28; // Bytes mapped at a time, so inputs past 2GB still work
+	
+	private FileChannel channel; // Channel over the input file
+	private RecordSplitter splitter; // Finds the separator at the end of each record
+	private long inputEnd; // File offset just past the last byte to read
+	private MappedByteBuffer window; // Currently mapped region of the file
+	private long windowStart; // File offset of the first byte in the window
+	private int position; // Offset in the window where the next record starts
+	private int recordStart; // Offset in the window of the current record
+	private int recordEnd; // Offset in the window just past the current record, before the separator
+	private int terminatorStart; // Offset in the window of the separator that ended the current record
+	private int terminatorEnd; // Offset in the window just past that separator
+	private ByteRecord record = new ByteRecord(); // View of the current record in the mapped bytes
+	
+	public MappedRecordReader(Path filePath) throws IOException {
+		this(filePath, new RecordSplitter(RecordSplitter.DEFAULT_SEPARATOR));
+	}
+	
+	public MappedRecordReader(Path filePath, RecordSplitter splitter) throws IOException {
+		this.splitter = splitter;
+		channel = FileChannel.open(filePath, StandardOpenOption.READ);
+		inputEnd = channel.size();
+		map(0, WINDOW_SIZE);
+	}
+	
+	// Reads only the line records in [start, end); both offsets must fall on record boundaries
+	public MappedRecordReader(Path filePath, long start, long end) throws IOException {
+		splitter = new RecordSplitter(RecordSplitter.DEFAULT_SEPARATOR);
+		channel = FileChannel.open(filePath, StandardOpenOption.READ);
+		inputEnd = Math.min(end, channel.size());
+		map(Math.min(start, inputEnd), WINDOW_SIZE);
+	}
+	
+	// Maps the region starting at the given file offset
+	private void map(long start, long size) throws IOException {
+		windowStart = start;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size, inputEnd - start));
+		position = 0;
+	}
+	
+	// Checks if the window reaches the end of the input
+	private boolean atEnd() {
+		return windowStart + window.limit() >= inputEnd;
+	}
+	
+	@Override
+	public boolean nextRecord() throws IOException {
+		if (splitter.skipsLeadingNewlines()) {
+			skipNewlines();
+		}
+		if (windowStart + position >= inputEnd) {
+			return false; // No more records
+		}
+		
+		// Look for the end of the record in the mapped bytes
+		boolean found = splitter.find(window, position, position, window.limit(), atEnd());
+		while (!found && !atEnd()) {
+			// The record runs past the window, so remap starting at the record, growing the window if
+			// a single record is larger than it
+			long size = Math.max(WINDOW_SIZE, 2L * (window.limit() - position));
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Record at offset " + (windowStart + position) + " is too large to map");
+			}
+			int scanned = window.limit() - position;
+			map(windowStart + position, size);
+			found = splitter.find(window, 0, scanned, window.limit(), atEnd());
+		}
+		
+		recordStart = position;
+		if (!found) {
+			// Last record without a trailing separator
+			recordEnd = window.limit();
+			position = window.limit();
+		}
+		else {
+			recordEnd = splitter.getSeparatorStart();
+			position = splitter.getSeparatorEnd();
+		}
+		terminatorStart = recordEnd;
+		terminatorEnd = position;
+		
+		recordEnd = splitter.trimEnd(window, recordStart, recordEnd);
+		record.set(window, recordStart, recordEnd - recordStart);
+		return true;
+	}
+	
+	// Skips newlines ahead of the next record, moving the window along while it holds nothing else
+	private void skipNewlines() throws IOException {
+		while (true) {
+			while (position < window.limit() && window.get(position) == '\n') {
+				position++;
+			}
+			if (position < window.limit() || atEnd()) {
+				return;
+			}
+			map(windowStart + position, WINDOW_SIZE);
+		}
+	}
+	
+	@Override
+	public String getRecord() {
+		return record.toString();
+	}
+	
+	@Override
+	public ByteRecord getBytes() {
+		return record;
+	}
+	
+	@Override
+	public String getTerminator() {
+		byte[] bytes = new byte[terminatorEnd - terminatorStart];
+		window.get(terminatorStart, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+	
+}
@@ -0,0 +1,69 @@
+public class NumberFormatter {
+	
+	public static final String DEFAULT_FORMAT = "%.6g"; // OFMT and CONVFMT when the program does not set them
+	private static final int CACHE_BITS = 8; // The cache holds 2^CACHE_BITS recently formatted values
+	private static final String[] SMALL_INTEGERS = new String[1024]; // Strings for the most common counters and indices
+	
+	static {
+		for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+			SMALL_INTEGERS[i] = Integer.toString(i);
+		}
+	}
+	
+	// A formatted value; entries are replaced whole, so threads sharing the cache never see half of one
+	private static class Entry {
+		private final long bits;
+		private final String text;
+	
+		private Entry(long bits, String text) {
+			this.bits = bits;
+			this.text = text;
+		}
+	}
+	
+	private final String format; // The format text, such as %.6g
+	private final PrintfFormat compiled; // The format, parsed once
+	private final Entry[] cache = new Entry[1 << CACHE_BITS]; // Recently formatted values by the bits of the double
+	
+	public NumberFormatter(String format) {
+		this.format = format;
+		this.compiled = PrintfFormat.compile(format);
+	}
+	
+	public String getFormat() {
+		return format;
+	}
+	
+	// Whole numbers print as integers whatever the format, as in other awks
+	public static String formatInteger(long integer) {
+		if (integer >= 0 && integer < SMALL_INTEGERS.length) {
+			return SMALL_INTEGERS[(int) integer];
+		}
+		return Long.toString(integer);
+	}
+	
+	// Formats a number with this format, or as an integer if it is a whole number a long holds
+	public String format(double number) {
+		if (isLong(number)) {
+			return formatInteger((long) number);
+		}
+		long bits = Double.doubleToRawLongBits(number);
+		int slot = (int) ((bits ^ (bits >>> 32)) * 0x9E3779B97F4A7C15L >>> (64 - CACHE_BITS));
+		Entry entry = cache[slot];
+		if (entry != null && entry.bits == bits) {
+			return entry.text;
+		}
+		StringBuilder text = new StringBuilder(24);
+		compiled.formatNumber(text, number);
+		entry = new Entry(bits, text.toString());
+		cache[slot] = entry;
+		return entry.text;
+	}
+	
+	// Checks if a number prints as an integer. Unlike NumberScanner.isWhole this goes on past 2^53,
+	// where doubles are still whole but no longer exact, as other awks do; -0 is left to the format
+	private static boolean isLong(double number) {
+		return number == Math.rint(number) && Math.abs(number) < 0x1p63 && !(number == 0 && 1 / number < 0);
+	}
+	
+}
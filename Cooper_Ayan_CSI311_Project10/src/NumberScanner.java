@@ -0,0 +1,147 @@
+public class NumberScanner {
+	
+	private static final int MAX_DIGITS = 18; // Significant digits a long always holds
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22}; // Powers a double holds exactly
+	
+	private double number; // Value found by the last scan
+	private long integer; // The value as a long, valid when integral is set
+	private boolean integral; // True when the value is a whole number a long holds exactly
+	private boolean strnum; // True when the whole text was a number
+	
+	// Reads text the way AWK turns a string into a number: blanks, an optional sign, digits with an
+	// optional fraction and exponent. The value is the longest such prefix, or 0 if there is none. Returns
+	// true if nothing but blanks follows the number, so the text counts as a number in comparisons.
+	// Works in one pass over the characters, without exceptions, and only builds a string for numbers
+	// too long or too precise to compute exactly from a long.
+	public boolean scan(CharSequence text) {
+		int length = text.length();
+		int i = 0;
+		while (i < length && isBlank(text.charAt(i))) {
+			i++;
+		}
+		int start = i;
+		boolean negative = false;
+		if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+			negative = text.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int significant = 0; // Digits in mantissa, not counting leading zeros
+		int exponent = 0; // Power of ten to scale mantissa by
+		boolean exact = true; // False once a nonzero digit did not fit in mantissa
+		boolean digits = false;
+		for (; i < length && isDigit(text.charAt(i)); i++) {
+			digits = true;
+			if (significant < MAX_DIGITS) {
+				mantissa = mantissa * 10 + (text.charAt(i) - '0');
+				if (mantissa > 0) {
+					significant++;
+				}
+			}
+			else {
+				exponent++;
+				exact &= text.charAt(i) == '0';
+			}
+		}
+		if (i < length && text.charAt(i) == '.') {
+			for (i++; i < length && isDigit(text.charAt(i)); i++) {
+				digits = true;
+				if (significant < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (text.charAt(i) - '0');
+					if (mantissa > 0) {
+						significant++;
+					}
+					exponent--;
+				}
+				else {
+					exact &= text.charAt(i) == '0';
+				}
+			}
+		}
+		if (!digits) {
+			setWhole(0); // No number at all, such as "", "abc", "+" or "."
+			strnum = false;
+			return false;
+		}
+		if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			// Only an exponent with digits counts; otherwise the e is the first character after the number
+			int j = i + 1;
+			boolean negativeExponent = false;
+			if (j < length && (text.charAt(j) == '+' || text.charAt(j) == '-')) {
+				negativeExponent = text.charAt(j) == '-';
+				j++;
+			}
+			if (j < length && isDigit(text.charAt(j))) {
+				int power = 0;
+				for (; j < length && isDigit(text.charAt(j)); j++) {
+					power = Math.min(power * 10 + (text.charAt(j) - '0'), 100000); // Far past the range of a double
+				}
+				exponent += negativeExponent ? -power : power;
+				i = j;
+			}
+		}
+		int end = i;
+		while (i < length && isBlank(text.charAt(i))) {
+			i++;
+		}
+		strnum = i == length;
+	
+		if (exact && exponent == 0) {
+			setWhole(negative ? -mantissa : mantissa);
+		}
+		else if (exact && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+			// Both the mantissa and the power of ten are exact doubles, so one operation rounds correctly
+			double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+			setNumber(negative ? -value : value);
+		}
+		else {
+			// The syntax was checked above, so this cannot throw
+			setNumber(Double.parseDouble(text.subSequence(start, end).toString()));
+		}
+		return strnum;
+	}
+	
+	private void setWhole(long value) {
+		integer = value;
+		number = value;
+		integral = true;
+	}
+	
+	private void setNumber(double value) {
+		number = value;
+		integral = isWhole(value);
+		integer = (long) value;
+	}
+	
+	// Checks if a double is a whole number a long holds exactly, so it can take the long path
+	public static boolean isWhole(double number) {
+		return number == Math.rint(number) && Math.abs(number) < 0x1p53 && !(number == 0 && 1 / number < 0);
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	// Blanks AWK allows around a number
+	private static boolean isBlank(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0b;
+	}
+	
+	public double getNumber() {
+		return number;
+	}
+	
+	public long getInteger() {
+		return integer;
+	}
+	
+	public boolean isIntegral() {
+		return integral;
+	}
+	
+	public boolean isStrnum() {
+		return strnum;
+	}
+	
+}
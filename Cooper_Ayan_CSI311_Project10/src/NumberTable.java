@@ -0,0 +1,129 @@
+import java.util.Arrays;
+import java.util.List;
+	
+public class NumberTable {
+	
+	private static final int MIN_CAPACITY = 16; // Slots in a new table; always a power of two
+	
+	private String[] keys = new String[MIN_CAPACITY]; // Key in each slot, or null if the slot is free
+	private int[] hashes = new int[MIN_CAPACITY]; // Hash of the key in the same slot, compared before the key
+	private double[] values = new double[MIN_CAPACITY]; // Value for the key in the same slot
+	private int size; // Number of keys in the table
+	
+	// Maps strings to doubles with open addressing and linear probing, so a numeric array costs two
+	// array slots per key instead of a map entry and a value object.
+	public NumberTable() {
+	}
+	
+	// Returns the slot holding key, or -1 if the key is not in the table
+	public int find(String key) {
+		int mask = keys.length - 1;
+		int hash = hash(key);
+		for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && keys[slot].equals(key)) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+	
+	// Stores a value, returning true if the key was not in the table before
+	public boolean put(String key, double value) {
+		int mask = keys.length - 1;
+		int hash = hash(key);
+		int slot = hash & mask;
+		for (; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && keys[slot].equals(key)) {
+				values[slot] = value;
+				return false;
+			}
+		}
+		keys[slot] = key;
+		hashes[slot] = hash;
+		values[slot] = value;
+		size++;
+		if (size * 4 > keys.length * 3) {
+			resize(keys.length * 2);
+		}
+		return true;
+	}
+	
+	// Removes the key in a slot returned by find. Later keys in the same run are shifted back, so
+	// lookups never need markers for removed keys.
+	public void removeAt(int slot) {
+		int mask = keys.length - 1;
+		int free = slot;
+		for (int next = (free + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+			int home = hashes[next] & mask;
+			// Move the key back unless its home slot lies after the free slot in this run
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				hashes[free] = hashes[next];
+				values[free] = values[next];
+				free = next;
+			}
+		}
+		keys[free] = null;
+		size--;
+	}
+	
+	public double valueAt(int slot) {
+		return values[slot];
+	}
+	
+	public String keyAt(int slot) {
+		return keys[slot];
+	}
+	
+	// Number of slots, for walking the table with keyAt and valueAt
+	public int capacity() {
+		return keys.length;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	// Adds every key to the list
+	public void addKeys(List<String> list) {
+		for (String key : keys) {
+			if (key != null) {
+				list.add(key);
+			}
+		}
+	}
+	
+	// Removes every key, keeping the slots for the next fill
+	public void clear() {
+		Arrays.fill(keys, null);
+		size = 0;
+	}
+	
+	private void resize(int capacity) {
+		String[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		double[] oldValues = values;
+		keys = new String[capacity];
+		hashes = new int[capacity];
+		values = new double[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int slot = oldHashes[i] & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				hashes[slot] = oldHashes[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+	
+	// Spreads the string hash so keys that differ only in their last characters land apart
+	private static int hash(String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+}
@@ -0,0 +1,86 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+	
+public class OffHeapArrayDataType extends InterpreterArrayDataType {
+	
+	private OffHeapTable table = new OffHeapTable(); // Every element, keyed by the UTF-8 bytes of its index
+	
+	// An array kept in off-heap memory, for programs that hold far more keys than the heap should
+	// (-W offheap). Numbers are stored as doubles and other values as UTF-8 text; reads make a new
+	// value, as elements only change by storing a new value.
+	public OffHeapArrayDataType() {
+	}
+	
+	@Override
+	public InterpreterDataType getArrayElement(String index) {
+		return load(table.find(encode(index)));
+	}
+	
+	// Whole numbers format the way a[1] and a["1"] are written, so both find the same element
+	@Override
+	public InterpreterDataType getArrayElement(InterpreterDataType index) {
+		return getArrayElement(index.getValue());
+	}
+	
+	@Override
+	public void setArrayElements(String index, InterpreterDataType value) {
+		if (isExactNumber(value)) {
+			table.putNumber(encode(index), value.getNumber());
+		}
+		else {
+			table.putString(encode(index), encode(value.getValue()));
+		}
+	}
+	
+	@Override
+	public void setArrayElements(InterpreterDataType index, InterpreterDataType value) {
+		setArrayElements(index.getValue(), value);
+	}
+	
+	@Override
+	public InterpreterDataType removeArrayElement(String index) {
+		byte[] key = encode(index);
+		InterpreterDataType removed = load(table.find(key));
+		if (removed != null) {
+			table.remove(key);
+		}
+		return removed;
+	}
+	
+	@Override
+	public ArrayList<String> getKeys() {
+		ArrayList<String> keys = new ArrayList<String>(size());
+		table.addKeys(keys);
+		return keys;
+	}
+	
+	@Override
+	public void clear() {
+		table.clear();
+	}
+	
+	@Override
+	public int size() {
+		return (int) Math.min(table.size(), Integer.MAX_VALUE);
+	}
+	
+	@Override
+	public boolean holdsNumbers() {
+		return false;
+	}
+	
+	private InterpreterDataType load(long entry) {
+		if (entry < 0) {
+			return null;
+		}
+		if (table.isNumber(entry)) {
+			return new InterpreterDataType(table.getNumber(entry));
+		}
+		return new InterpreterDataType(table.getString(entry));
+	}
+	
+	private static byte[] encode(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+	
+}
@@ -0,0 +1,313 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+	
+public class OffHeapTable {
+	
+	private static final int CHUNK_BITS = 26; // Entries are written to direct buffers of up to 64 MiB
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int FIRST_CHUNK = 1 << 16; // The first buffer starts small and grows, so small arrays stay small
+	private static final int SLOT_BITS = 27; // Slots per index buffer, 1 GiB of longs
+	private static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+	private static final long OFFSET_MASK = (1L << 48) - 1; // Low bits of a slot: where its entry starts
+	private static final int MIN_SLOTS = 1 << 10; // Slots in a new index; always a power of two
+	private static final int HEADER = 16; // Entry header: hash, key length, value length
+	private static final int NUMBER = -1; // Value length of an entry whose value is a double
+	
+	// Entries, one after another: the 64-bit key hash, the key length, the value length or NUMBER,
+	// the key as UTF-8 and then the value as UTF-8 or a double. An entry never spans two buffers.
+	private ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private long top = 8; // Where the next entry goes; nothing starts at 0, so 0 marks a free slot
+	
+	// Open-addressing index with linear probing. Each slot holds the offset of its entry and, in the top
+	// 16 bits, part of the key hash, so most probes never have to read the entry.
+	private ByteBuffer[] index;
+	private long slots; // Number of slots in the index
+	private long size; // Number of keys in the table
+	private long garbage; // Bytes of entries that were replaced by a larger value
+	
+	// Keeps string keys and values in direct buffers outside the Java heap, so very large arrays add
+	// nothing for the garbage collector to trace. Space of replaced entries is not reused until clear.
+	public OffHeapTable() {
+		allocateIndex(MIN_SLOTS);
+	}
+	
+	// Returns the offset of the entry for key, or -1 if the key is not in the table
+	public long find(byte[] key) {
+		long hash = hash(key);
+		long mask = slots - 1;
+		for (long i = hash & mask; ; i = (i + 1) & mask) {
+			long slot = getSlot(i);
+			if (slot == 0) {
+				return -1;
+			}
+			if (slot >>> 48 == hash >>> 48 && matches(slot & OFFSET_MASK, key)) {
+				return slot & OFFSET_MASK;
+			}
+		}
+	}
+	
+	// Stores a number, returning true if the key was not in the table before
+	public boolean putNumber(byte[] key, double value) {
+		return put(key, null, value);
+	}
+	
+	// Stores a string, returning true if the key was not in the table before
+	public boolean putString(byte[] key, byte[] value) {
+		return put(key, value, 0);
+	}
+	
+	// Removes a key, returning true if it was in the table. Later keys in the same run are shifted
+	// back, so lookups never need markers for removed keys.
+	public boolean remove(byte[] key) {
+		long hash = hash(key);
+		long mask = slots - 1;
+		long free = hash & mask;
+		while (true) {
+			long slot = getSlot(free);
+			if (slot == 0) {
+				return false;
+			}
+			if (slot >>> 48 == hash >>> 48 && matches(slot & OFFSET_MASK, key)) {
+				break;
+			}
+			free = (free + 1) & mask;
+		}
+		for (long next = (free + 1) & mask; getSlot(next) != 0; next = (next + 1) & mask) {
+			long home = entryHash(getSlot(next) & OFFSET_MASK) & mask;
+			// Move the key back unless its home slot lies after the free slot in this run
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				setSlot(free, getSlot(next));
+				free = next;
+			}
+		}
+		setSlot(free, 0);
+		size--;
+		return true;
+	}
+	
+	// Checks if the entry at offset holds a number rather than a string
+	public boolean isNumber(long entry) {
+		return chunk(entry).getInt(position(entry) + 12) == NUMBER;
+	}
+	
+	public double getNumber(long entry) {
+		ByteBuffer chunk = chunk(entry);
+		int position = position(entry);
+		return chunk.getDouble(position + HEADER + chunk.getInt(position + 8));
+	}
+	
+	public String getString(long entry) {
+		ByteBuffer chunk = chunk(entry);
+		int position = position(entry);
+		return decode(chunk, position + HEADER + chunk.getInt(position + 8), chunk.getInt(position + 12));
+	}
+	
+	public String getKey(long entry) {
+		ByteBuffer chunk = chunk(entry);
+		int position = position(entry);
+		return decode(chunk, position + HEADER, chunk.getInt(position + 8));
+	}
+	
+	// Adds every key to the list
+	public void addKeys(List<String> list) {
+		for (long i = 0; i < slots; i++) {
+			long slot = getSlot(i);
+			if (slot != 0) {
+				list.add(getKey(slot & OFFSET_MASK));
+			}
+		}
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	// Bytes of off-heap memory in use, including replaced entries
+	public long getUsedBytes() {
+		return top + slots * 8;
+	}
+	
+	public long getGarbage() {
+		return garbage;
+	}
+	
+	// Removes every key. The first buffer is kept for the next fill and the rest are left to the collector.
+	public void clear() {
+		while (chunks.size() > 1) {
+			chunks.remove(chunks.size() - 1);
+		}
+		top = 8;
+		size = 0;
+		garbage = 0;
+		if (slots == MIN_SLOTS) {
+			for (long i = 0; i < slots; i++) {
+				setSlot(i, 0);
+			}
+		}
+		else {
+			allocateIndex(MIN_SLOTS);
+		}
+	}
+	
+	private boolean put(byte[] key, byte[] text, double number) {
+		long hash = hash(key);
+		long mask = slots - 1;
+		long i = hash & mask;
+		for (long slot = getSlot(i); slot != 0; i = (i + 1) & mask, slot = getSlot(i)) {
+			long entry = slot & OFFSET_MASK;
+			if (slot >>> 48 == hash >>> 48 && matches(entry, key)) {
+				ByteBuffer chunk = chunk(entry);
+				int position = position(entry);
+				int valueLength = chunk.getInt(position + 12);
+				int valueStart = position + HEADER + key.length;
+				if (text == null && valueLength == NUMBER) {
+					chunk.putDouble(valueStart, number); // Counters and sums are updated where they are
+					return false;
+				}
+				if (text != null && valueLength == text.length) {
+					chunk.put(valueStart, text);
+					return false;
+				}
+				garbage += HEADER + key.length + (valueLength == NUMBER ? 8 : valueLength);
+				setSlot(i, write(hash, key, text, number));
+				return false;
+			}
+		}
+		setSlot(i, write(hash, key, text, number));
+		size++;
+		if (size * 10 > slots * 7) {
+			resize(slots * 2);
+		}
+		return true;
+	}
+	
+	// Appends an entry and returns its slot value
+	private long write(long hash, byte[] key, byte[] text, double number) {
+		int length = HEADER + key.length + (text == null ? 8 : text.length);
+		long entry = allocate(length);
+		ByteBuffer chunk = chunk(entry);
+		int position = position(entry);
+		chunk.putLong(position, hash);
+		chunk.putInt(position + 8, key.length);
+		chunk.putInt(position + 12, text == null ? NUMBER : text.length);
+		chunk.put(position + HEADER, key);
+		if (text == null) {
+			chunk.putDouble(position + HEADER + key.length, number);
+		}
+		else {
+			chunk.put(position + HEADER + key.length, text);
+		}
+		return (hash >>> 48) << 48 | entry;
+	}
+	
+	// Reserves length bytes in one buffer, starting a new buffer when the current one is full
+	private long allocate(int length) {
+		if (length > CHUNK_SIZE) {
+			throw new RuntimeException("Array element of " + length + " bytes is too large for off-heap storage");
+		}
+		if (position(top) + length > CHUNK_SIZE) {
+			top = ((top >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+		}
+		long end = top + length;
+		int chunkIndex = (int) (top >>> CHUNK_BITS);
+		if (chunkIndex == chunks.size()) {
+			chunks.add(ByteBuffer.allocateDirect(chunkIndex == 0 ? FIRST_CHUNK : CHUNK_SIZE));
+		}
+		ByteBuffer chunk = chunks.get(chunkIndex);
+		if (position(end - 1) >= chunk.capacity()) {
+			// Only the first buffer is ever smaller than CHUNK_SIZE; double it until the entry fits
+			int capacity = chunk.capacity();
+			while (capacity <= position(end - 1)) {
+				capacity = Math.min(capacity * 2, CHUNK_SIZE);
+			}
+			ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+			grown.put(0, chunk, 0, position(top));
+			chunks.set(chunkIndex, grown);
+		}
+		long entry = top;
+		top = end;
+		return entry;
+	}
+	
+	private void resize(long newSlots) {
+		ByteBuffer[] oldIndex = index;
+		long oldSlots = slots;
+		allocateIndex(newSlots);
+		long mask = slots - 1;
+		for (long i = 0; i < oldSlots; i++) {
+			long slot = oldIndex[(int) (i >>> SLOT_BITS)].getLong((int) (i & SLOT_MASK) << 3);
+			if (slot != 0) {
+				long j = entryHash(slot & OFFSET_MASK) & mask;
+				while (getSlot(j) != 0) {
+					j = (j + 1) & mask;
+				}
+				setSlot(j, slot);
+			}
+		}
+	}
+	
+	private void allocateIndex(long newSlots) {
+		int buffers = (int) ((newSlots + SLOT_MASK) >>> SLOT_BITS);
+		index = new ByteBuffer[buffers];
+		for (int i = 0; i < buffers; i++) {
+			index[i] = ByteBuffer.allocateDirect((int) Math.min(newSlots - ((long) i << SLOT_BITS), 1L << SLOT_BITS) << 3);
+		}
+		slots = newSlots;
+	}
+	
+	private long getSlot(long i) {
+		return index[(int) (i >>> SLOT_BITS)].getLong((int) (i & SLOT_MASK) << 3);
+	}
+	
+	private void setSlot(long i, long slot) {
+		index[(int) (i >>> SLOT_BITS)].putLong((int) (i & SLOT_MASK) << 3, slot);
+	}
+	
+	private ByteBuffer chunk(long offset) {
+		return chunks.get((int) (offset >>> CHUNK_BITS));
+	}
+	
+	private static int position(long offset) {
+		return (int) (offset & (CHUNK_SIZE - 1));
+	}
+	
+	private long entryHash(long entry) {
+		return chunk(entry).getLong(position(entry));
+	}
+	
+	// Compares the key of the entry at offset with key
+	private boolean matches(long entry, byte[] key) {
+		ByteBuffer chunk = chunk(entry);
+		int position = position(entry);
+		if (chunk.getInt(position + 8) != key.length) {
+			return false;
+		}
+		position += HEADER;
+		for (int i = 0; i < key.length; i++) {
+			if (chunk.get(position + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static String decode(ByteBuffer chunk, int position, int length) {
+		byte[] bytes = new byte[length];
+		chunk.get(position, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	// 64-bit FNV-1a, finished with a multiply so the low bits that pick the slot depend on every byte
+	private static long hash(byte[] key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			hash = (hash ^ b) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 32;
+		hash *= 0xd6e8feb86659fd93L;
+		return hash ^ (hash >>> 32);
+	}
+	
+}
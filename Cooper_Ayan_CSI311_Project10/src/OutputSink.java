@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class OutputSink extends OutputStream {
+	
+	// When buffered output is handed to the underlying stream
+	public enum FlushMode {
+		THROUGHPUT, // Only when the buffer fills up or the program ends
+		LATENCY // Also after every record, for interactive use and pipes read line by line
+	}
+	
+	private static final int BUFFER_SIZE = 1 << 16; // Size of the reusable output buffer
+	
+	private OutputStream out; // Stream the buffered bytes are written to
+	private FlushMode mode; // When to flush
+	private byte[] buffer = new byte[BUFFER_SIZE]; // Bytes not yet written
+	private int count; // Number of bytes in the buffer
+	
+	public OutputSink(OutputStream out) {
+		this(out, FlushMode.THROUGHPUT);
+	}
+	
+	public OutputSink(OutputStream out, FlushMode mode) {
+		this.out = out;
+		this.mode = mode;
+	}
+	
+	// Picks the mode for standard output: latency when it is a terminal, even if the input is a pipe
+	// as in producer | awk. System.console() is only set when standard input is a terminal too, so
+	// it is the fallback where /proc is missing; there -W interactive is needed for piped input.
+	public static FlushMode standardOutputMode() {
+		try {
+			String target = Files.readSymbolicLink(Path.of("/proc/self/fd/1")).toString();
+			return target.startsWith("/dev/pts/") || target.startsWith("/dev/tty") ? FlushMode.LATENCY : FlushMode.THROUGHPUT;
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			return System.console() != null ? FlushMode.LATENCY : FlushMode.THROUGHPUT;
+		}
+	}
+	
+	public FlushMode getMode() {
+		return mode;
+	}
+	
+	public void setMode(FlushMode mode) {
+		this.mode = mode;
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = (byte) b;
+	}
+	
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		if (length >= buffer.length) {
+			// Too big to be worth copying, so write it straight through
+			flushBuffer();
+			out.write(bytes, offset, length);
+			return;
+		}
+		if (length > buffer.length - count) {
+			flushBuffer();
+		}
+		System.arraycopy(bytes, offset, buffer, count, length);
+		count += length;
+	}
+	
+	// Copies bytes straight out of a buffer, such as a mapped input file, without a temporary array
+	public void write(ByteBuffer bytes, int offset, int length) throws IOException {
+		if (bytes.hasArray()) {
+			write(bytes.array(), bytes.arrayOffset() + offset, length);
+			return;
+		}
+		while (length > 0) {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			int chunk = Math.min(length, buffer.length - count);
+			bytes.get(offset, buffer, count, chunk);
+			count += chunk;
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+	
+	// Writes text as UTF-8, copying ASCII characters straight into the buffer
+	public void print(CharSequence text) {
+		try {
+			int length = text.length();
+			for (int i = 0; i < length; i++) {
+				char c = text.charAt(i);
+				if (c >= 0x80) {
+					// Encode the rest in one go
+					byte[] encoded = text.subSequence(i, length).toString().getBytes(StandardCharsets.UTF_8);
+					write(encoded, 0, encoded.length);
+					return;
+				}
+				if (count == buffer.length) {
+					flushBuffer();
+				}
+				buffer[count++] = (byte) c;
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// Marks the end of a record's output, flushing in latency mode
+	public void endRecord() {
+		if (mode == FlushMode.LATENCY) {
+			try {
+				flush();
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	// Writes out the buffered bytes without flushing the underlying stream
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+	
+	// Flushes and closes the underlying stream; the interpreter only flushes its main output
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+	
+}
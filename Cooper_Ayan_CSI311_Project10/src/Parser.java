@@ -25,6 +25,10 @@ public class Parser {
 		// Looks for various types of BlockNodes and places them appropriately in the ProgramNode
 		public boolean ParseAction(ProgramNode programNode) throws Exception {
 			AcceptSeparators();
+			if (!tokenHandler.MoreTokens()) {
+				// Only trailing separators were left, so there is no block to add
+				return true;
+			}
 			if (tokenHandler.MatchAndRemove(Token.TokenType.BEGIN).isPresent()) {
 				// Found BEGIN token and returns Begin BlockNode
 				BlockNode beginBlock = ParseBlock();
@@ -636,14 +640,14 @@ public class Parser {
 		// Returns IfNode for if, else if, and else statements
 		public Optional<StatementNode> ParseIf() throws Exception {
 			//if (tokenHandler.MatchAndRemove(Token.TokenType.IF).isPresent()) {
-			Optional<Node> condition = ParseOperation();
+			Optional<Node> condition = ParseCondition();
 			BlockNode ifBlock = ParseBlock();
 			IfNode ifNode = new IfNode(condition, ifBlock);
 			IfNode currentIfNode = ifNode;
 			
 			while (tokenHandler.MatchAndRemove(Token.TokenType.ELSE).isPresent()) {
 				if (tokenHandler.MatchAndRemove(Token.TokenType.IF).isPresent()) {
-					Optional<Node> elseIfCondition = ParseOperation();
+					Optional<Node> elseIfCondition = ParseCondition();
 					BlockNode elseIfBlock = ParseBlock();
 					IfNode elseIfNode = new IfNode(elseIfCondition, elseIfBlock);
 					currentIfNode.setNextIf(elseIfNode);
@@ -660,11 +664,32 @@ public class Parser {
 			//return Optional.empty();
 		}
 		
+		// Returns the parenthesized condition of an if, so a statement right after the closing
+		// parenthesis isn't read as part of the condition
+		private Optional<Node> ParseCondition() throws Exception {
+			if (!tokenHandler.MatchAndRemove(Token.TokenType.LEFTPARENTHESIS).isPresent()) {
+				return ParseOperation();
+			}
+			Optional<Node> condition = ParseOperation();
+			if (!tokenHandler.MatchAndRemove(Token.TokenType.RIGHTPARENTHESIS).isPresent()) {
+				throw new Exception("Expected a closing parenthesis ')'");
+			}
+			return condition;
+		}
+		
 		// Returns ForNode or ForEachNode for for loops and for each loops
 		public Optional<StatementNode> ParseFor() throws Exception {
 			if (tokenHandler.MatchAndRemove(Token.TokenType.LEFTPARENTHESIS).isPresent()) {
 				Optional<Node> initialize = ParseOperation();
 				if (initialize.isPresent()) {
+					// ParseOperation reads "key in array" as a membership test, so unwrap it
+					if (initialize.get() instanceof OperationNode
+							&& ((OperationNode) initialize.get()).getOperation() == OperationNode.AWKOperation.IN
+							&& tokenHandler.MatchAndRemove(Token.TokenType.RIGHTPARENTHESIS).isPresent()) {
+						OperationNode membership = (OperationNode) initialize.get();
+						BlockNode forEachBlock = ParseBlock();
+						return Optional.of(new ForEachNode(membership.getLeft(), membership.getRight().get(), forEachBlock));
+					}
 					if (tokenHandler.MatchAndRemove(Token.TokenType.IN).isPresent()) {
 						// For each loop
 						Optional<Node> iterable = ParseOperation();
@@ -820,12 +845,39 @@ public class Parser {
 			}
 		}
 		
+		// Attaches > file, >> file or | "command" to a print or printf call. The target is read at the
+		// concatenation level, so print(x) > $1 ".log" writes to the concatenated name
+		private Optional<Node> ParseRedirection(Optional<Node> call) throws Exception {
+			if (call.isEmpty() || !(call.get() instanceof FunctionCallNode)) {
+				return call;
+			}
+			RedirectionCache.Kind kind;
+			if (tokenHandler.MatchAndRemove(Token.TokenType.RIGHTARROW).isPresent()) {
+				kind = RedirectionCache.Kind.WRITE;
+			}
+			else if (tokenHandler.MatchAndRemove(Token.TokenType.RIGHTSHIFT).isPresent()) {
+				kind = RedirectionCache.Kind.APPEND;
+			}
+			else if (tokenHandler.MatchAndRemove(Token.TokenType.OR).isPresent()) {
+				kind = RedirectionCache.Kind.PIPE;
+			}
+			else {
+				return call;
+			}
+			Optional<Node> target = ParseConcatenation();
+			if (target.isEmpty()) {
+				throw new Exception("Expected a file name or command after the redirection");
+			}
+			((FunctionCallNode) call.get()).setRedirection(kind, target.get());
+			return call;
+		}
+		
 		public Optional<Node> ParseSpecialFunctionCall() throws Exception {
 			if (tokenHandler.MatchAndRemove(Token.TokenType.PRINT).isPresent()) {
-				return ParseFunctionCall(Optional.of(new VariableReferenceNode("print")));
+				return ParseRedirection(ParseFunctionCall(Optional.of(new VariableReferenceNode("print"))));
 			}
 			if (tokenHandler.MatchAndRemove(Token.TokenType.PRINTF).isPresent()) {
-				return ParseFunctionCall(Optional.of(new VariableReferenceNode("printf")));
+				return ParseRedirection(ParseFunctionCall(Optional.of(new VariableReferenceNode("printf"))));
 			}
 			if (tokenHandler.MatchAndRemove(Token.TokenType.GETLINE).isPresent()) {
 				return ParseFunctionCall(Optional.of(new VariableReferenceNode("getline")));
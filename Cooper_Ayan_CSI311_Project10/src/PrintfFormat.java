@@ -0,0 +1,525 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+	
+public class PrintfFormat {
+	
+	private static final int CACHE_SIZE = 512; // Distinct formats kept compiled before the cache starts over
+	private static final String CONVERSIONS = "diouxXeEfFgGcs"; // Conversion characters printf understands
+	private static final String LENGTH_MODIFIERS = "hlLqjzt"; // C length modifiers, accepted and ignored
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+	private static final double[] NEGATIVE_POWERS_OF_TEN = {1e0, 1e-1, 1e-2, 1e-3, 1e-4}; // Down to the smallest %g prints without an exponent
+	private static final double FAST_FIXED_LIMIT = 1e12; // Largest scaled value %f rounds without BigDecimal
+	
+	// Compiled formats by their text, shared by every interpreter and worker thread
+	private static final ConcurrentHashMap<String, PrintfFormat> cache = new ConcurrentHashMap<String, PrintfFormat>();
+	
+	// A run of literal text, or one conversion and its flags
+	private static class Segment {
+		private String literal; // Text copied as is, null for a conversion
+		private char conversion; // One of CONVERSIONS
+		private boolean leftAlign; // - flag
+		private boolean plus; // + flag
+		private boolean space; // Space flag
+		private boolean zero; // 0 flag
+		private boolean alternate; // # flag
+		private int width = -1; // Minimum width, -1 if not given
+		private boolean widthArgument; // Width is taken from the next argument (*)
+		private int precision = -1; // Precision, -1 if not given
+		private boolean precisionArgument; // Precision is taken from the next argument (.*)
+	}
+	
+	private static final InterpreterDataType MISSING = new InterpreterDataType(); // Stands in for arguments that were not passed
+	
+	static {
+		MISSING.getNumber(); // Parsed now, so threads sharing it only ever read it
+	}
+	
+	private Segment[] segments; // The format, split up once
+	
+	private PrintfFormat(String format) {
+		ArrayList<Segment> parsed = new ArrayList<Segment>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while (i < format.length()) {
+			char c = format.charAt(i);
+			if (c != '%') {
+				literal.append(c);
+				i++;
+				continue;
+			}
+			if (i + 1 < format.length() && format.charAt(i + 1) == '%') {
+				literal.append('%');
+				i += 2;
+				continue;
+			}
+			Segment conversion = new Segment();
+			int end = parseConversion(format, i + 1, conversion);
+			if (end < 0) {
+				// Not a conversion printf knows, so it is printed as it was written
+				literal.append(c);
+				i++;
+				continue;
+			}
+			if (literal.length() > 0) {
+				Segment text = new Segment();
+				text.literal = literal.toString();
+				parsed.add(text);
+				literal.setLength(0);
+			}
+			parsed.add(conversion);
+			i = end;
+		}
+		if (literal.length() > 0) {
+			Segment text = new Segment();
+			text.literal = literal.toString();
+			parsed.add(text);
+		}
+		segments = parsed.toArray(new Segment[0]);
+	}
+	
+	// Returns the compiled form of a format, compiling it the first time it is seen
+	public static PrintfFormat compile(String format) {
+		PrintfFormat compiled = cache.get(format);
+		if (compiled == null) {
+			compiled = new PrintfFormat(format);
+			if (cache.size() >= CACHE_SIZE) {
+				cache.clear(); // Formats built at run time should not grow the cache forever
+			}
+			cache.put(format, compiled);
+		}
+		return compiled;
+	}
+	
+	// Formats one number with this format, for OFMT and CONVFMT. A format that would print the number
+	// as a string gets the plain Java form instead, since making that string is what is being asked.
+	public void formatNumber(StringBuilder out, double number) {
+		for (Segment segment : segments) {
+			if (segment.conversion == 's' || segment.conversion == 'c' || segment.widthArgument || segment.precisionArgument) {
+				out.append(number);
+				return;
+			}
+		}
+		format(out, new InterpreterDataType[] {new InterpreterDataType(number)});
+	}
+	
+	// Reads the flags, width, precision and conversion after a %, returning the index after the
+	// conversion character, or -1 if there is no valid conversion
+	private static int parseConversion(String format, int i, Segment segment) {
+		for (; i < format.length(); i++) {
+			char flag = format.charAt(i);
+			if (flag == '-') {
+				segment.leftAlign = true;
+			}
+			else if (flag == '+') {
+				segment.plus = true;
+			}
+			else if (flag == ' ') {
+				segment.space = true;
+			}
+			else if (flag == '0') {
+				segment.zero = true;
+			}
+			else if (flag == '#') {
+				segment.alternate = true;
+			}
+			else {
+				break;
+			}
+		}
+		if (i < format.length() && format.charAt(i) == '*') {
+			segment.widthArgument = true;
+			i++;
+		}
+		else {
+			int start = i;
+			while (i < format.length() && isDigit(format.charAt(i))) {
+				i++;
+			}
+			if (i > start) {
+				segment.width = Integer.parseInt(format.substring(start, i));
+			}
+		}
+		if (i < format.length() && format.charAt(i) == '.') {
+			i++;
+			if (i < format.length() && format.charAt(i) == '*') {
+				segment.precisionArgument = true;
+				i++;
+			}
+			else {
+				int start = i;
+				while (i < format.length() && isDigit(format.charAt(i))) {
+					i++;
+				}
+				segment.precision = i > start ? Integer.parseInt(format.substring(start, i)) : 0;
+			}
+		}
+		while (i < format.length() && LENGTH_MODIFIERS.indexOf(format.charAt(i)) >= 0) {
+			i++;
+		}
+		if (i == format.length() || CONVERSIONS.indexOf(format.charAt(i)) < 0) {
+			return -1;
+		}
+		segment.conversion = format.charAt(i);
+		return i + 1;
+	}
+	
+	// Appends the formatted arguments; missing arguments count as empty strings
+	public void format(StringBuilder out, InterpreterDataType[] arguments) {
+		int next = 0;
+		for (Segment segment : segments) {
+			if (segment.literal != null) {
+				out.append(segment.literal);
+				continue;
+			}
+			int width = segment.width;
+			boolean leftAlign = segment.leftAlign;
+			if (segment.widthArgument) {
+				width = (int) argument(arguments, next++).getNumber();
+				if (width < 0) {
+					leftAlign = true; // A negative width from * means - was given
+					width = -width;
+				}
+			}
+			int precision = segment.precision;
+			if (segment.precisionArgument) {
+				precision = (int) argument(arguments, next++).getNumber();
+				if (precision < 0) {
+					precision = -1; // A negative precision from .* counts as none
+				}
+			}
+			convert(out, segment, argument(arguments, next++), width, leftAlign, precision);
+		}
+	}
+	
+	private static InterpreterDataType argument(InterpreterDataType[] arguments, int index) {
+		return index < arguments.length && arguments[index] != null ? arguments[index] : MISSING;
+	}
+	
+	// Appends one conversion, then pads it to the width
+	private static void convert(StringBuilder out, Segment segment, InterpreterDataType argument, int width, boolean leftAlign, int precision) {
+		int start = out.length();
+		int digitsStart = start; // Where zero padding goes, after any sign or 0x
+		boolean zeroPad = segment.zero && !leftAlign;
+		switch (segment.conversion) {
+		case 's':
+			String string = argument.getValue();
+			out.append(string, 0, precision >= 0 && precision < string.length() ? precision : string.length());
+			zeroPad = false;
+			break;
+	
+		case 'c':
+			if (argument.isNumber()) {
+				int code = (int) argument.getNumber(); // Numbers are character codes
+				if (Character.isValidCodePoint(code)) {
+					out.appendCodePoint(code);
+				}
+				else {
+					out.append((char) (code & 0xff));
+				}
+			}
+			else if (!argument.getValue().isEmpty()) {
+				out.appendCodePoint(argument.getValue().codePointAt(0)); // Strings print their first character
+			}
+			zeroPad = false;
+			break;
+	
+		case 'd':
+		case 'i':
+			double integer = argument.getNumber();
+			if (Double.isNaN(integer) || Double.isInfinite(integer)) {
+				appendSpecial(out, segment, integer, false);
+				zeroPad = false;
+				break;
+			}
+			appendSign(out, segment, integer <= -1); // Only the whole part is printed, so -0.5 is 0
+			digitsStart = out.length();
+			String digits = Math.abs(integer) < 0x1p63 ? Long.toString(Math.abs((long) integer))
+					: new BigDecimal(Math.abs(integer)).toBigInteger().toString();
+			appendInteger(out, digits, precision);
+			zeroPad &= precision < 0; // As in C, a precision turns off zero padding
+			break;
+	
+		case 'o':
+		case 'u':
+		case 'x':
+		case 'X':
+			long unsigned = (long) argument.getNumber(); // Negative values show their two's complement
+			String text = segment.conversion == 'o' ? Long.toOctalString(unsigned)
+					: segment.conversion == 'u' ? Long.toUnsignedString(unsigned) : Long.toHexString(unsigned);
+			if (segment.conversion == 'X') {
+				text = text.toUpperCase();
+			}
+			if (segment.alternate && unsigned != 0 && segment.conversion != 'u') {
+				out.append(segment.conversion == 'o' ? "0" : segment.conversion == 'x' ? "0x" : "0X");
+				if (segment.conversion == 'o') {
+					precision = Math.max(precision, text.length() + 1) - 1; // The 0 already counts as a digit
+				}
+			}
+			digitsStart = out.length();
+			appendInteger(out, text, precision);
+			zeroPad &= precision < 0;
+			break;
+	
+		default:
+			double number = argument.getNumber();
+			if (Double.isNaN(number) || Double.isInfinite(number)) {
+				appendSpecial(out, segment, number, Character.isUpperCase(segment.conversion));
+				zeroPad = false;
+				break;
+			}
+			boolean negative = number < 0 || (number == 0 && 1 / number < 0);
+			appendSign(out, segment, negative);
+			digitsStart = out.length();
+			appendFloat(out, segment, Math.abs(number), precision < 0 ? 6 : precision);
+			break;
+		}
+		int padding = width - out.length() + start;
+		if (padding > 0) {
+			if (leftAlign) {
+				for (int i = 0; i < padding; i++) {
+					out.append(' ');
+				}
+			}
+			else {
+				out.insert(zeroPad ? digitsStart : start, zeroPad ? zeros(padding) : spaces(padding));
+			}
+		}
+	}
+	
+	// Appends the digits of an integer conversion, with at least precision digits
+	private static void appendInteger(StringBuilder out, String digits, int precision) {
+		if (precision == 0 && digits.equals("0")) {
+			return; // A zero precision prints nothing for zero
+		}
+		for (int i = digits.length(); i < precision; i++) {
+			out.append('0');
+		}
+		out.append(digits);
+	}
+	
+	private static void appendSign(StringBuilder out, Segment segment, boolean negative) {
+		if (negative) {
+			out.append('-');
+		}
+		else if (segment.plus) {
+			out.append('+');
+		}
+		else if (segment.space) {
+			out.append(' ');
+		}
+	}
+	
+	// Appends inf or nan the way C's printf spells them
+	private static void appendSpecial(StringBuilder out, Segment segment, double number, boolean upperCase) {
+		appendSign(out, segment, number < 0);
+		String text = Double.isNaN(number) ? "nan" : "inf";
+		out.append(upperCase ? text.toUpperCase() : text);
+	}
+	
+	// Appends a non-negative finite number for %e, %f and %g
+	private static void appendFloat(StringBuilder out, Segment segment, double number, int precision) {
+		switch (segment.conversion) {
+		case 'f':
+		case 'F':
+			appendFixed(out, number, precision);
+			if (precision == 0 && segment.alternate) {
+				out.append('.');
+			}
+			break;
+	
+		case 'e':
+		case 'E':
+			appendExponent(out, number, precision, segment.conversion == 'E', segment.alternate);
+			break;
+	
+		default:
+			int significant = precision == 0 ? 1 : precision;
+			int start = out.length();
+			if (number == Math.rint(number) && number < POWERS_OF_TEN[Math.min(significant, POWERS_OF_TEN.length - 1)]) {
+				// Whole numbers that fit in the precision print as integers
+				out.append((long) number);
+				if (segment.alternate) {
+					appendTrailingZeros(out, significant - (out.length() - start));
+				}
+				break;
+			}
+			if (appendGeneral(out, number, significant)) {
+				if (!segment.alternate) {
+					stripTrailingZeros(out, start);
+				}
+				else if (out.indexOf(".", start) < 0) {
+					out.append('.'); // # keeps the point when rounding left no digits after it, as in 913246.
+				}
+				break;
+			}
+			int exponent = 0;
+			if (number != 0) {
+				BigDecimal rounded = new BigDecimal(number).round(new MathContext(significant, RoundingMode.HALF_EVEN));
+				exponent = rounded.precision() - rounded.scale() - 1;
+			}
+			if (exponent < significant && exponent >= -4) {
+				appendFixed(out, number, significant - 1 - exponent);
+				if (exponent == significant - 1 && segment.alternate) {
+					out.append('.');
+				}
+			}
+			else {
+				appendExponent(out, number, significant - 1, segment.conversion == 'G', segment.alternate);
+			}
+			if (!segment.alternate) {
+				stripTrailingZeros(out, start);
+			}
+			break;
+		}
+	}
+	
+	// %g for numbers that print without an exponent, such as most OFMT and CONVFMT output, rounded
+	// on a long like %f. Returns false, having appended nothing, when the slow path is needed.
+	private static boolean appendGeneral(StringBuilder out, double number, int significant) {
+		if (number < NEGATIVE_POWERS_OF_TEN[4] || number >= POWERS_OF_TEN[15] || significant >= POWERS_OF_TEN.length) {
+			return false;
+		}
+		int exponent = 0; // Power of ten of the first digit
+		if (number >= 1) {
+			while (number >= POWERS_OF_TEN[exponent + 1]) {
+				exponent++;
+			}
+		}
+		else {
+			while (number < NEGATIVE_POWERS_OF_TEN[-exponent]) {
+				exponent--;
+			}
+		}
+		int decimals = significant - 1 - exponent;
+		if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+			return false;
+		}
+		double scaled = number * POWERS_OF_TEN[decimals];
+		double whole = Math.floor(scaled);
+		double fraction = scaled - whole;
+		if (scaled >= FAST_FIXED_LIMIT || Math.abs(fraction - 0.5) <= 1e-3) {
+			return false; // Too close to a rounding tie to trust scaled
+		}
+		long rounded = (long) whole + (fraction > 0.5 ? 1 : 0);
+		if (rounded >= (long) POWERS_OF_TEN[significant]) {
+			// Rounding carried into the next power of ten, as 9.9999995 does at 6 digits
+			if (decimals == 0) {
+				return false; // Now too big to print without an exponent
+			}
+			decimals--;
+			rounded /= 10;
+		}
+		String digits = Long.toString(rounded);
+		if (digits.length() <= decimals) {
+			digits = zeros(decimals + 1 - digits.length()) + digits;
+		}
+		int point = digits.length() - decimals;
+		out.append(digits, 0, point);
+		if (decimals > 0) {
+			out.append('.').append(digits, point, digits.length());
+		}
+		return true;
+	}
+	
+	// Adds a decimal point if needed, then zeros, for %#g of a whole number
+	private static void appendTrailingZeros(StringBuilder out, int count) {
+		out.append('.');
+		for (int i = 0; i < count; i++) {
+			out.append('0');
+		}
+	}
+	
+	// Appends a number with a fixed number of decimals, rounding like C's printf
+	private static void appendFixed(StringBuilder out, double number, int precision) {
+		if (precision < POWERS_OF_TEN.length) {
+			double scaled = number * POWERS_OF_TEN[precision];
+			double whole = Math.floor(scaled);
+			double fraction = scaled - whole;
+			// Far enough from a rounding tie that the error in scaled cannot change the result
+			if (scaled < FAST_FIXED_LIMIT && Math.abs(fraction - 0.5) > 1e-3) {
+				String digits = Long.toString((long) whole + (fraction > 0.5 ? 1 : 0));
+				if (digits.length() <= precision) {
+					digits = zeros(precision + 1 - digits.length()) + digits; // Leading 0 and zeros after the point
+				}
+				int point = digits.length() - precision;
+				out.append(digits, 0, point);
+				if (precision > 0) {
+					out.append('.').append(digits, point, digits.length());
+				}
+				return;
+			}
+		}
+		out.append(new BigDecimal(number).setScale(precision, RoundingMode.HALF_EVEN).toPlainString());
+	}
+	
+	// Appends a number as d.ddde+XX with precision digits after the point
+	private static void appendExponent(StringBuilder out, double number, int precision, boolean upperCase, boolean alternate) {
+		String digits;
+		int exponent;
+		if (number == 0) {
+			digits = "0";
+			exponent = 0;
+		}
+		else {
+			BigDecimal rounded = new BigDecimal(number).round(new MathContext(precision + 1, RoundingMode.HALF_EVEN));
+			digits = rounded.unscaledValue().toString();
+			exponent = digits.length() - 1 - rounded.scale();
+		}
+		out.append(digits.charAt(0));
+		if (precision > 0 || alternate) {
+			out.append('.');
+		}
+		for (int i = 1; i <= precision; i++) {
+			out.append(i < digits.length() ? digits.charAt(i) : '0');
+		}
+		out.append(upperCase ? 'E' : 'e');
+		out.append(exponent < 0 ? '-' : '+');
+		if (Math.abs(exponent) < 10) {
+			out.append('0');
+		}
+		out.append(Math.abs(exponent));
+	}
+	
+	// Removes zeros after the decimal point, and the point itself if nothing is left after it, as %g does
+	private static void stripTrailingZeros(StringBuilder out, int start) {
+		int point = -1;
+		int mantissaEnd = out.length();
+		for (int i = start; i < out.length(); i++) {
+			char c = out.charAt(i);
+			if (c == '.') {
+				point = i;
+			}
+			else if (c == 'e' || c == 'E') {
+				mantissaEnd = i;
+				break;
+			}
+		}
+		if (point < 0) {
+			return;
+		}
+		int end = mantissaEnd;
+		while (end > point + 1 && out.charAt(end - 1) == '0') {
+			end--;
+		}
+		if (end == point + 1) {
+			end = point;
+		}
+		out.delete(end, mantissaEnd);
+	}
+	
+	private static String zeros(int count) {
+		return "0".repeat(count);
+	}
+	
+	private static String spaces(int count) {
+		return " ".repeat(count);
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+}
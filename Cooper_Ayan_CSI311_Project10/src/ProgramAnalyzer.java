@@ -0,0 +1,259 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Optional;
+
+public class ProgramAnalyzer {
+	
+	// How per-chunk copies of an updated variable or array are combined
+	public enum MergeType {
+		SUM, MIN, MAX
+	}
+	
+	// Built-in functions that neither change state nor touch the input
+	private static final HashSet<String> PURE_FUNCTIONS = new HashSet<String>(Arrays.asList(
+			"print", "printf", "sprintf", "gsub", "match", "sub", "index", "length", "substr", "tolower", "toupper"));
+	
+	private ProgramNode program; // Program being analyzed
+	private HashMap<String, MergeType> updates = new HashMap<String, MergeType>(); // Mergeable updates found so far
+	private HashSet<String> reads = new HashSet<String>(); // Variables read outside of mergeable updates
+	
+	public ProgramAnalyzer(ProgramNode program) {
+		this.program = program;
+	}
+	
+	// Checks if each record can be processed without seeing any other record: the other blocks
+	// assign nothing, read no record counters, and never move the input themselves
+	public boolean isRecordIndependent() {
+		HashMap<String, MergeType> mergeable = getMergeableUpdates();
+		return mergeable != null && mergeable.isEmpty();
+	}
+	
+	// Finds the variables and arrays the other blocks only update with commutative operations
+	// (+=, -=, ++, --, and the "if (x > max[k]) max[k] = x" idioms) and never read otherwise.
+	// Returns null if the blocks carry any other state from one record to the next.
+	public HashMap<String, MergeType> getMergeableUpdates() {
+		updates.clear();
+		reads.clear();
+		for (BlockNode block : program.getOtherBlocks()) {
+			if (!isStateless(block)) {
+				return null;
+			}
+		}
+		for (String name : updates.keySet()) {
+			if (reads.contains(name)) {
+				return null; // A partial value would be seen
+			}
+		}
+		return new HashMap<String, MergeType>(updates);
+	}
+	
+	// Walks a node, returning false at the first thing that could carry state between records
+	private boolean isStateless(Node node) {
+		if (node == null || node instanceof ConstantNode || node instanceof PatternNode
+				|| node instanceof BreakNode || node instanceof ContinueNode) {
+			return true;
+		}
+		
+		// An assignment used as a value, such as the n++ in print(n++), would expose the partial value
+		// of its target; statements go through isStatelessStatement instead
+		if (node instanceof AssignmentNode) {
+			return false;
+		}
+		
+		// Anything else that writes a variable or array
+		if (node instanceof DeleteNode || node instanceof ForEachNode) {
+			return false;
+		}
+		
+		if (node instanceof VariableReferenceNode) {
+			VariableReferenceNode variable = (VariableReferenceNode) node;
+			if (variable.getVariableName().equals("NR") || variable.getVariableName().equals("FNR")) {
+				return false; // Record counters depend on every earlier record
+			}
+			reads.add(variable.getVariableName());
+			return isStateless(variable.getIndexExpression());
+		}
+		
+		if (node instanceof OperationNode) {
+			OperationNode operation = (OperationNode) node;
+			return isStateless(operation.getLeft()) && isStateless(operation.getRight());
+		}
+		
+		if (node instanceof TernaryNode) {
+			TernaryNode ternary = (TernaryNode) node;
+			return isStateless(ternary.getCondition()) && isStateless(ternary.getTrueCase())
+					&& isStateless(ternary.getFalseCase());
+		}
+		
+		if (node instanceof FunctionCallNode) {
+			// User functions, getline, next and split are all treated as stateful
+			FunctionCallNode call = (FunctionCallNode) node;
+			if (call.getRedirection() != null) {
+				return false; // Redirected output has to be written in order by one interpreter
+			}
+			if (!PURE_FUNCTIONS.contains(call.getFunctionName())) {
+				return false;
+			}
+			for (Node parameter : call.getParameters()) {
+				if (!isStateless(parameter)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		if (node instanceof BlockNode) {
+			BlockNode block = (BlockNode) node;
+			if (!isStateless(block.getCondition())) {
+				return false;
+			}
+			for (StatementNode statement : block.getStatements()) {
+				if (!isStatelessStatement(statement)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		if (node instanceof IfNode) {
+			IfNode ifNode = (IfNode) node;
+			if (isMergeableExtreme(ifNode)) {
+				return true;
+			}
+			return isStateless(ifNode.getCondition()) && isStateless(ifNode.getIfBlock())
+					&& isStateless(ifNode.getNextIf().orElse(null));
+		}
+		
+		if (node instanceof WhileNode) {
+			WhileNode whileNode = (WhileNode) node;
+			return isStateless(whileNode.getCondition()) && isStateless(whileNode.getStatements());
+		}
+		
+		if (node instanceof DoWhileNode) {
+			DoWhileNode doWhileNode = (DoWhileNode) node;
+			return isStateless(doWhileNode.getCondition()) && isStateless(doWhileNode.getStatements());
+		}
+		
+		if (node instanceof ForNode) {
+			ForNode forNode = (ForNode) node;
+			return isStateless(forNode.getInitialization()) && isStateless(forNode.getCondition())
+					&& isStateless(forNode.getUpdate()) && isStateless(forNode.getForBlock());
+		}
+		
+		if (node instanceof ReturnNode) {
+			return isStateless(((ReturnNode) node).getReturnValue());
+		}
+		
+		return false; // Unknown nodes are assumed to carry state
+	}
+	
+	// Walks a statement of a block; only here, where nothing uses its value, may an assignment be a
+	// mergeable update
+	private boolean isStatelessStatement(StatementNode statement) {
+		if (statement instanceof AssignmentNode) {
+			return isMergeableUpdate((AssignmentNode) statement);
+		}
+		return isStateless(statement);
+	}
+	
+	// Checks for target += expr, target -= expr, and ++/-- on the target (the parser turns all of
+	// these into an assignment of an operation on the target itself)
+	private boolean isMergeableUpdate(AssignmentNode assignment) {
+		if (!(assignment.getTarget() instanceof VariableReferenceNode) || !(assignment.getExpression() instanceof OperationNode)) {
+			return false;
+		}
+		VariableReferenceNode target = (VariableReferenceNode) assignment.getTarget();
+		OperationNode operation = (OperationNode) assignment.getExpression();
+		String targetText = target.toString();
+		
+		boolean additive;
+		switch (operation.getOperation()) {
+		case ADD:
+		case SUBTRACT:
+			additive = sameNode(operation.getLeft(), targetText) && operation.getRight().isPresent()
+					&& isStateless(operation.getRight());
+			break;
+		case POSTINC:
+		case POSTDEC:
+			additive = sameNode(operation.getLeft(), targetText);
+			break;
+		case PREINC:
+		case PREDEC:
+			additive = sameNode(operation.getRight().orElse(null), targetText);
+			break;
+		default:
+			additive = false;
+		}
+		return additive && isStateless(target.getIndexExpression()) && addUpdate(target.getVariableName(), MergeType.SUM);
+	}
+	
+	// Checks for "if (expr > target) target = expr" and the <, <=, >= and mirrored forms
+	private boolean isMergeableExtreme(IfNode ifNode) {
+		if (ifNode.getNextIf().isPresent() || ifNode.getCondition().isEmpty()
+				|| !(ifNode.getCondition().get() instanceof OperationNode)) {
+			return false;
+		}
+		LinkedList<StatementNode> body = ifNode.getIfBlock().getStatements();
+		if (body.size() != 1 || !(body.getFirst() instanceof AssignmentNode)) {
+			return false;
+		}
+		AssignmentNode assignment = (AssignmentNode) body.getFirst();
+		if (!(assignment.getTarget() instanceof VariableReferenceNode)) {
+			return false;
+		}
+		VariableReferenceNode target = (VariableReferenceNode) assignment.getTarget();
+		String targetText = target.toString();
+		String valueText = assignment.getExpression().toString();
+		
+		OperationNode compare = (OperationNode) ifNode.getCondition().get();
+		Node left = compare.getLeft();
+		Node right = compare.getRight().orElse(null);
+		boolean greater;
+		switch (compare.getOperation()) {
+		case GT:
+		case GE:
+			greater = true;
+			break;
+		case LT:
+		case LE:
+			greater = false;
+			break;
+		default:
+			return false;
+		}
+		
+		MergeType type;
+		if (sameNode(left, valueText) && sameNode(right, targetText)) {
+			type = greater ? MergeType.MAX : MergeType.MIN; // expr > target
+		}
+		else if (sameNode(left, targetText) && sameNode(right, valueText)) {
+			type = greater ? MergeType.MIN : MergeType.MAX; // target > expr
+		}
+		else {
+			return false;
+		}
+		return isStateless(assignment.getExpression()) && isStateless(target.getIndexExpression())
+				&& addUpdate(target.getVariableName(), type);
+	}
+	
+	// Compares nodes by their printed form, which is enough to spot the same target or expression
+	private boolean sameNode(Node node, String text) {
+		return node != null && node.toString().equals(text);
+	}
+	
+	// Records an update, failing if the same name is merged two different ways
+	private boolean addUpdate(String name, MergeType type) {
+		if (updates.containsKey(name) && updates.get(name) != type) {
+			return false;
+		}
+		updates.put(name, type);
+		return true;
+	}
+	
+	private boolean isStateless(Optional<Node> node) {
+		return node == null || node.isEmpty() || isStateless(node.get());
+	}
+	
+}
@@ -0,0 +1,22 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface RecordReader extends Closeable {
+	
+	// Moves to the next record, returning false once the input is exhausted
+	boolean nextRecord() throws IOException;
+	
+	// Returns the text of the current record, decoding it the first time it is asked for
+	String getRecord();
+	
+	// Returns the undecoded bytes of the current record, or null if the reader works on characters
+	default ByteRecord getBytes() {
+		return null;
+	}
+	
+	// Returns the text that ended the current record, for RT
+	default String getTerminator() {
+		return "\n";
+	}
+	
+}
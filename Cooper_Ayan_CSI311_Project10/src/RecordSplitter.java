@@ -0,0 +1,180 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class RecordSplitter {
+	
+	// Ways a record separator can be matched, from cheapest to most expensive
+	public enum SplitType {
+		NEWLINE, CHARACTER, LITERAL, PARAGRAPH, REGEX
+	}
+	
+	public static final String DEFAULT_SEPARATOR = "\n"; // RS when the program does not set it
+	
+	private String separator; // RS this splitter was built for
+	private SplitType type; // How the separator is matched
+	private byte character; // Separator byte for NEWLINE and CHARACTER splitting
+	private byte[] literal; // Separator bytes for LITERAL splitting
+	private Matcher matcher; // Compiled separator for PARAGRAPH and REGEX splitting, reused for every scan
+	private int liveOffset; // Offset into the record of the first place a separator may still start
+	private ByteRecord view = new ByteRecord(); // Bytes being scanned by the matcher
+	private int separatorStart; // Start of the last separator found
+	private int separatorEnd; // End of the last separator found
+	
+	public RecordSplitter(String separator) {
+		this.separator = separator;
+		if (separator.equals(DEFAULT_SEPARATOR)) {
+			type = SplitType.NEWLINE; // Lines, with \r\n treated like \n
+			character = '\n';
+		}
+		else if (separator.isEmpty()) {
+			type = SplitType.PARAGRAPH; // Records are separated by one or more blank lines
+			matcher = Pattern.compile("\n\n+").matcher("").useTransparentBounds(true).useAnchoringBounds(false);
+		}
+		else if (separator.length() == 1 && separator.charAt(0) < 0x80) {
+			type = SplitType.CHARACTER; // A single character is always used literally
+			character = (byte) separator.charAt(0);
+		}
+		else if (!FieldSplitter.isRegex(separator)) {
+			type = SplitType.LITERAL;
+			literal = separator.getBytes(StandardCharsets.UTF_8);
+		}
+		else {
+			type = SplitType.REGEX;
+			// Scans may start part way into a record, where lookbehinds should still see the bytes
+			// before and ^ should not match
+			matcher = Pattern.compile(separator).matcher("").useTransparentBounds(true).useAnchoringBounds(false);
+		}
+	}
+	
+	public String getSeparator() {
+		return separator;
+	}
+	
+	public SplitType getType() {
+		return type;
+	}
+	
+	// Checks if newlines before the first record are skipped, as they are in paragraph mode
+	public boolean skipsLeadingNewlines() {
+		return type == SplitType.PARAGRAPH;
+	}
+	
+	// Looks for the separator ending the record that starts at recordStart. Bytes before scanFrom were
+	// already searched without success. Returns false if the buffered bytes up to limit are not enough
+	// to tell where the record ends; unless atEnd, the caller should read more and try again.
+	public boolean find(ByteBuffer buffer, int recordStart, int scanFrom, int limit, boolean atEnd) {
+		int start;
+		switch (type) {
+		case NEWLINE:
+		case CHARACTER:
+			start = indexOf(buffer, character, scanFrom, limit);
+			if (start < 0) {
+				return false;
+			}
+			separatorStart = start;
+			separatorEnd = start + 1;
+			return true;
+		
+		case LITERAL:
+			start = indexOf(buffer, literal, Math.max(recordStart, scanFrom - literal.length + 1), limit);
+			if (start < 0) {
+				return false;
+			}
+			separatorStart = start;
+			separatorEnd = start + literal.length;
+			return true;
+		
+		default:
+			// Rescanning the whole record after every read would be quadratic on long records. A place
+			// where no match attempt ran into the end of the bytes can never start a separator, so
+			// scans of the same record go on from the first place where one did
+			start = scanFrom > recordStart ? recordStart + liveOffset : recordStart;
+			view.set(buffer, recordStart, limit - recordStart);
+			matcher.reset(view);
+			matcher.region(start - recordStart, limit - recordStart);
+			boolean found = false;
+			while (matcher.find()) {
+				if (!atEnd && matcher.hitEnd()) {
+					break; // More input could make the match longer
+				}
+				if (matcher.end() > matcher.start()) {
+					found = true;
+					break;
+				}
+			}
+			if (found) {
+				separatorStart = recordStart + matcher.start();
+				separatorEnd = recordStart + matcher.end();
+				return true;
+			}
+			liveOffset = (matcher.hitEnd() ? firstLiveStart(recordStart, start, limit) : limit) - recordStart;
+			return false;
+		}
+	}
+	
+	// Finds the first place at or after from where a match attempt runs into limit, so more bytes
+	// could still make it a separator
+	private int firstLiveStart(int recordStart, int from, int limit) {
+		for (int i = from; i < limit; i++) {
+			matcher.region(i - recordStart, limit - recordStart);
+			matcher.lookingAt();
+			if (matcher.hitEnd()) {
+				return i;
+			}
+		}
+		return limit;
+	}
+	
+	// Finds a byte in [from, limit), or -1
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int limit) {
+		for (int i = from; i < limit; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	// Finds a byte sequence starting in [from, limit), or -1
+	private static int indexOf(ByteBuffer buffer, byte[] bytes, int from, int limit) {
+		for (int i = from; i <= limit - bytes.length; i++) {
+			int j = 0;
+			while (j < bytes.length && buffer.get(i + j) == bytes[j]) {
+				j++;
+			}
+			if (j == bytes.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	// Start of the separator found by the last successful find
+	public int getSeparatorStart() {
+		return separatorStart;
+	}
+	
+	// End of the separator found by the last successful find
+	public int getSeparatorEnd() {
+		return separatorEnd;
+	}
+	
+	// Removes what the separator leaves at the end of a record: the \r of a \r\n line break, or the
+	// trailing newlines of the last paragraph
+	public int trimEnd(ByteBuffer buffer, int recordStart, int recordEnd) {
+		if (type == SplitType.NEWLINE) {
+			if (recordEnd > recordStart && buffer.get(recordEnd - 1) == '\r') {
+				recordEnd--;
+			}
+		}
+		else if (type == SplitType.PARAGRAPH) {
+			while (recordEnd > recordStart && buffer.get(recordEnd - 1) == '\n') {
+				recordEnd--;
+			}
+		}
+		return recordEnd;
+	}
+	
+}
@@ -0,0 +1,129 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+	
+public class RedirectionCache {
+	
+	// Kinds of output redirection
+	public enum Kind {
+		WRITE, // print > file
+		APPEND, // print >> file
+		PIPE // print | "command"
+	}
+	
+	// An open file or command and the sink buffering output to it
+	private static class Redirection {
+		private OutputSink sink;
+		private Process process; // Command behind a pipe, null for files
+	}
+	
+	public static final int DEFAULT_MAX_OPEN = 256; // Open files allowed before the least recently used is closed
+	
+	private LinkedHashMap<String, Redirection> open = new LinkedHashMap<String, Redirection>(16, 0.75f, true); // Open targets, least recently used first
+	private HashSet<String> written = new HashSet<String>(); // Files truncated by > that must be appended to if reopened
+	private int maxOpen = DEFAULT_MAX_OPEN; // File descriptor budget for redirections
+	
+	// Sets how many targets may be open at once; pipes are never closed to stay under it
+	public void setMaxOpen(int maxOpen) {
+		this.maxOpen = Math.max(1, maxOpen);
+	}
+	
+	public int getMaxOpen() {
+		return maxOpen;
+	}
+	
+	public int getOpenCount() {
+		return open.size();
+	}
+	
+	// Returns the sink for a target, opening it the first time or after it was closed
+	public OutputSink get(String name, Kind kind) {
+		Redirection redirection = open.get(name);
+		if (redirection != null) {
+			return redirection.sink;
+		}
+		if (open.size() >= maxOpen) {
+			evict();
+		}
+		redirection = new Redirection();
+		try {
+			if (kind == Kind.PIPE) {
+				redirection.process = new ProcessBuilder("sh", "-c", name).redirectOutput(ProcessBuilder.Redirect.INHERIT)
+						.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				redirection.sink = new OutputSink(redirection.process.getOutputStream());
+			}
+			else {
+				// > only truncates the first time; a file closed to save descriptors is appended to when reopened
+				boolean append = kind == Kind.APPEND || written.contains(name);
+				OutputStream file = new FileOutputStream(name, append);
+				if (name.endsWith(".gz")) {
+					// Compressed in blocks on other threads; gzip reads members appended after a reopen as one file
+					file = new CompressingOutputStream(file);
+				}
+				redirection.sink = new OutputSink(file);
+				written.add(name);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Cannot redirect output to " + name, e);
+		}
+		open.put(name, redirection);
+		return redirection.sink;
+	}
+	
+	// Closes the least recently used file, keeping pipes open since closing one ends its command
+	private void evict() {
+		Iterator<Map.Entry<String, Redirection>> entries = open.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<String, Redirection> entry = entries.next();
+			if (entry.getValue().process == null) {
+				entries.remove();
+				finish(entry.getValue());
+				return;
+			}
+		}
+	}
+	
+	// Closes a target for close(), returning the command's exit status for pipes, 0 for files, or -1
+	// if nothing by that name is open. A later > to the same file truncates it again.
+	public int close(String name) {
+		Redirection redirection = open.remove(name);
+		written.remove(name);
+		if (redirection == null) {
+			return -1;
+		}
+		return finish(redirection);
+	}
+	
+	// Closes every target, as at the end of the program
+	public void closeAll() {
+		for (Redirection redirection : open.values()) {
+			finish(redirection);
+		}
+		open.clear();
+	}
+	
+	// Flushes and closes one target, waiting for a piped command to finish
+	private int finish(Redirection redirection) {
+		try {
+			redirection.sink.close(); // For a pipe this ends the command's input
+			if (redirection.process == null) {
+				return 0;
+			}
+			return redirection.process.waitFor();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+	
+}
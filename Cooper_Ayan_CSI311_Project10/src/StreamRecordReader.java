@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.Reader;
+	
+public class StreamRecordReader implements RecordReader {
+	
+	private static final int BUFFER_SIZE = 1 << 16; // Size of the read buffer
+	
+	private Reader reader; // Source of characters
+	private char[] buffer = new char[BUFFER_SIZE]; // Characters read but not yet split
+	private int position; // Offset where the next record starts
+	private int limit; // Number of valid characters in the buffer
+	private StringBuilder partial = new StringBuilder(); // Start of a record that ran past the buffer
+	private String record; // Text of the current record
+	private boolean terminated; // True when the current record ended at a newline rather than the end of input
+	
+	// Splits the input on \n only, dropping a \r right before it, the same way the byte readers split
+	// lines; BufferedReader.readLine would also end a record at a lone \r
+	public StreamRecordReader(Reader input) {
+		this.reader = input;
+	}
+	
+	@Override
+	public boolean nextRecord() throws IOException {
+		partial.setLength(0);
+		while (true) {
+			int newline = indexOfNewline(buffer, position, limit);
+			if (newline >= 0) {
+				if (partial.length() == 0) {
+					int end = newline > position && buffer[newline - 1] == '\r' ? newline - 1 : newline; // Drop the \r of a \r\n line break
+					record = new String(buffer, position, end - position);
+				}
+				else {
+					// The record started in an earlier fill, and so may its \r
+					partial.append(buffer, position, newline - position);
+					record = trimEnd(partial);
+				}
+				position = newline + 1;
+				terminated = true;
+				return true;
+			}
+			partial.append(buffer, position, limit - position);
+			position = 0;
+			limit = reader.read(buffer, 0, buffer.length);
+			if (limit < 0) {
+				limit = 0;
+				if (partial.length() == 0) {
+					return false; // No more records
+				}
+				// Last record without a trailing newline
+				terminated = false;
+				record = trimEnd(partial);
+				return true;
+			}
+		}
+	}
+	
+	// Finds the first \n in [from, limit), or -1
+	private static int indexOfNewline(char[] chars, int from, int limit) {
+		for (int i = from; i < limit; i++) {
+			if (chars[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	// Drops a \r from the end of a record
+	private static String trimEnd(StringBuilder text) {
+		int length = text.length();
+		if (length > 0 && text.charAt(length - 1) == '\r') {
+			length--;
+		}
+		return text.substring(0, length);
+	}
+	
+	@Override
+	public String getRecord() {
+		return record;
+	}
+	
+	@Override
+	public String getTerminator() {
+		return terminated ? "\n" : "";
+	}
+	
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+}